@@ -1,4 +1,16 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class GameInventoryExercise {
     // Common interface for all items
@@ -53,21 +65,1021 @@ public class GameInventoryExercise {
         }
     }
 
+    // slots() is the list as given, in its order and with any repeated item ids, as with the
+    // original List.copyOf. Derived versions share structure with this one; when several slots hold
+    // the same item id, find, with, add and without act on the first of them, like List.indexOf.
     record Inventory(List<InventorySlot> slots, int capacity) {
         public Inventory {
             if (capacity <= 0) {
                 throw new IllegalArgumentException("Capacity must be positive");
             }
-            slots = List.copyOf(slots); // Make the list immutable
+            slots = SlotList.copyOf(slots); // Immutable; versions derived below share structure
+        }
+
+        public static Inventory empty(int capacity) {
+            return new Inventory(SlotList.empty(), capacity);
         }
 
         public boolean isFull() { return slots.size() >= capacity; }
+
+        public Optional<InventorySlot> find(int itemId) {
+            return Optional.ofNullable(list().find(itemId));
+        }
+
+        // Puts the slot in place of the first slot holding the same item id, or appends it, in O(log n)
+        public Inventory with(InventorySlot slot) {
+            SlotList list = list();
+            if (list.find(slot.item().id()) == null && isFull()) {
+                throw new IllegalStateException("Inventory is full");
+            }
+            SlotList updated = list.with(slot);
+            return updated == list ? this : new Inventory(updated, capacity);
+        }
+
+        // Stacks onto an existing slot of the same item or takes a new one
+        public Inventory add(ItemStats item, int quantity) {
+            InventorySlot current = list().find(item.id());
+            return with(new InventorySlot(item, current == null ? quantity : Math.addExact(current.quantity(), quantity)));
+        }
+
+        // Removes the first slot holding the item
+        public Inventory without(int itemId) {
+            SlotList list = list();
+            SlotList updated = list.without(itemId);
+            return updated == list ? this : new Inventory(updated, capacity);
+        }
+
+        private SlotList list() { return (SlotList) slots; }
+    }
+
+    // Persistent list of slots in the order they were added, repeated item ids allowed. Each slot
+    // gets the next sequence number and sits in a 32-way trie addressed by it, like a persistent
+    // vector; a removed slot leaves an empty cell, and every node counts the slots below it so
+    // get(i) skips empty cells in O(log n). A SlotTrie from item id to the first slot holding it
+    // makes find, replace and remove by id O(log n) as well. Updates copy only the nodes on the
+    // changed paths. Once empty cells outnumber slots the list is rebuilt, renumbering the slots.
+    static final class SlotList extends AbstractList<InventorySlot> {
+        private static final int BITS = 5;
+        private static final int WIDTH = 1 << BITS;
+        private static final int MAX_DEPTH = 7;
+        private static final SlotList EMPTY = new SlotList(null, 0, 0, SlotTrie.empty());
+
+        private final Node root;      // null when empty
+        private final int shift;      // sequence bits below the root's level
+        private final int next;       // sequence number of the next appended slot
+        private final SlotTrie index; // item id -> first slot holding it
+
+        private SlotList(Node root, int shift, int next, SlotTrie index) {
+            this.root = root;
+            this.shift = shift;
+            this.next = next;
+            this.index = index;
+        }
+
+        static SlotList empty() { return EMPTY; }
+
+        static SlotList copyOf(List<InventorySlot> slots) {
+            if (slots instanceof SlotList list) return list;
+            SlotList list = EMPTY;
+            for (InventorySlot slot : slots) {
+                list = list.append(Objects.requireNonNull(slot));
+            }
+            return list;
+        }
+
+        InventorySlot find(int itemId) {
+            SlotTrie.Placed placed = index.find(itemId);
+            return placed == null ? null : placed.slot();
+        }
+
+        // Replaces the first slot holding the same item id, or appends the slot
+        SlotList with(InventorySlot slot) {
+            SlotTrie.Placed placed = index.find(slot.item().id());
+            if (placed == null) return append(slot);
+            if (placed.slot().equals(slot)) return this;
+            return new SlotList(root.set(placed.sequence(), slot, shift), shift, next,
+                    index.put(new SlotTrie.Placed(placed.sequence(), slot, placed.copies())));
+        }
+
+        // Removes the first slot holding the item id. Finding the next slot with the same id to
+        // index instead is a scan, so this is O(n) only when the id appears more than once.
+        SlotList without(int itemId) {
+            SlotTrie.Placed placed = index.find(itemId);
+            if (placed == null) return this;
+            Node updated = root.set(placed.sequence(), null, shift);
+            SlotTrie updatedIndex = index.without(itemId);
+            if (placed.copies() > 1) {
+                for (int sequence = placed.sequence() + 1; ; sequence++) {
+                    InventorySlot slot = updated.at(sequence, shift);
+                    if (slot != null && slot.item().id() == itemId) {
+                        updatedIndex = updatedIndex.put(new SlotTrie.Placed(sequence, slot, placed.copies() - 1));
+                        break;
+                    }
+                }
+            }
+            if (updated.size == 0) return EMPTY;
+            SlotList list = new SlotList(updated, shift, next, updatedIndex);
+            return next - updated.size > Math.max(WIDTH, updated.size) ? compact(list) : list;
+        }
+
+        private SlotList append(InventorySlot slot) {
+            if (next == Integer.MAX_VALUE) return compact(this).append(slot);
+            Node grown = root;
+            int grownShift = shift;
+            if (grown == null) {
+                grown = Node.EMPTY;
+            } else if (next >>> grownShift >= WIDTH) {
+                Object[] cells = new Object[WIDTH];
+                cells[0] = grown;
+                grown = new Node(cells, grown.size);
+                grownShift += BITS;
+            }
+            int id = slot.item().id();
+            SlotTrie.Placed placed = index.find(id);
+            SlotTrie updatedIndex = index.put(placed == null
+                    ? new SlotTrie.Placed(next, slot, 1)
+                    : new SlotTrie.Placed(placed.sequence(), placed.slot(), placed.copies() + 1));
+            return new SlotList(grown.set(next, slot, grownShift), grownShift, next + 1, updatedIndex);
+        }
+
+        private static SlotList compact(SlotList list) {
+            SlotList compacted = EMPTY;
+            for (InventorySlot slot : list) {
+                compacted = compacted.append(slot);
+            }
+            return compacted;
+        }
+
+        @Override
+        public InventorySlot get(int index) {
+            Objects.checkIndex(index, size());
+            Node node = root;
+            while (true) {
+                for (Object cell : node.cells) {
+                    int cellSize = Node.sizeOf(cell);
+                    if (index < cellSize) {
+                        if (cell instanceof InventorySlot slot) return slot;
+                        node = (Node) cell;
+                        break;
+                    }
+                    index -= cellSize;
+                }
+            }
+        }
+
+        @Override
+        public int size() { return root == null ? 0 : root.size; }
+
+        // Depth-first walk with an explicit stack; avoids the O(log n) get() per element
+        @Override
+        public Iterator<InventorySlot> iterator() {
+            return new Iterator<>() {
+                private final Node[] nodes = new Node[MAX_DEPTH];
+                private final int[] positions = new int[MAX_DEPTH];
+                private int depth = root == null ? -1 : 0;
+                private int remaining = size();
+
+                {
+                    if (root != null) nodes[0] = root;
+                }
+
+                @Override
+                public boolean hasNext() { return remaining > 0; }
+
+                @Override
+                public InventorySlot next() {
+                    if (remaining == 0) throw new NoSuchElementException();
+                    while (true) {
+                        Node node = nodes[depth];
+                        if (positions[depth] == node.cells.length) {
+                            depth--;
+                            continue;
+                        }
+                        Object cell = node.cells[positions[depth]++];
+                        if (cell instanceof InventorySlot slot) {
+                            remaining--;
+                            return slot;
+                        }
+                        if (cell instanceof Node child && child.size > 0) {
+                            nodes[++depth] = child;
+                            positions[depth] = 0;
+                        }
+                    }
+                }
+            };
+        }
+
+        private static final class Node {
+            static final Node EMPTY = new Node(new Object[WIDTH], 0);
+
+            final Object[] cells; // InventorySlot, Node or null, by sequence bits at this level
+            final int size;       // slots below this node
+
+            Node(Object[] cells, int size) {
+                this.cells = cells;
+                this.size = size;
+            }
+
+            static int sizeOf(Object cell) {
+                return cell instanceof Node node ? node.size : cell == null ? 0 : 1;
+            }
+
+            InventorySlot at(int sequence, int shift) {
+                Object cell = cells[(sequence >>> shift) & (WIDTH - 1)];
+                if (shift == 0 || cell == null) return (InventorySlot) cell;
+                return ((Node) cell).at(sequence, shift - BITS);
+            }
+
+            // A copy with the cell for sequence set to slot (null to clear it)
+            Node set(int sequence, InventorySlot slot, int shift) {
+                int position = (sequence >>> shift) & (WIDTH - 1);
+                Object cell = cells[position];
+                Object replacement = shift == 0 ? slot
+                        : (cell == null ? EMPTY : (Node) cell).set(sequence, slot, shift - BITS);
+                Object[] copy = cells.clone();
+                copy[position] = replacement;
+                return new Node(copy, size - sizeOf(cell) + sizeOf(replacement));
+            }
+        }
+    }
+
+    // Persistent hash array mapped trie from item id to the first slot holding that id, with its
+    // sequence number in the SlotList and how many slots hold the id. Item ids are ints, so 5-bit
+    // chunks of the id (lowest first) address each level directly and no collision buckets are
+    // needed. An update copies only the nodes on the path to the changed entry.
+    static final class SlotTrie {
+        private static final SlotTrie EMPTY = new SlotTrie(null);
+        private static final int BITS = 5;
+
+        record Placed(int sequence, InventorySlot slot, int copies) {
+            int id() { return slot.item().id(); }
+        }
+
+        private final Node root;
+
+        private SlotTrie(Node root) {
+            this.root = root;
+        }
+
+        static SlotTrie empty() { return EMPTY; }
+
+        Placed find(int itemId) {
+            Node node = root;
+            for (int shift = 0; node != null; shift += BITS) {
+                int bit = 1 << ((itemId >>> shift) & 31);
+                if ((node.bitmap & bit) == 0) return null;
+                Object entry = node.entries[Integer.bitCount(node.bitmap & (bit - 1))];
+                if (entry instanceof Placed placed) {
+                    return placed.id() == itemId ? placed : null;
+                }
+                node = (Node) entry;
+            }
+            return null;
+        }
+
+        // Adds the entry or replaces the one for the same item id
+        SlotTrie put(Placed placed) {
+            Node updated = root == null ? Node.of(placed, 0) : root.put(placed, 0);
+            return updated == root ? this : new SlotTrie(updated);
+        }
+
+        SlotTrie without(int itemId) {
+            if (root == null) return this;
+            Object updated = root.remove(itemId, 0);
+            if (updated == root) return this;
+            return updated == null ? EMPTY
+                    : new SlotTrie(updated instanceof Node node ? node : Node.of((Placed) updated, 0));
+        }
+
+        private static final class Node {
+            final int bitmap;        // which of the 32 branches are present
+            final Object[] entries;  // Placed or Node, in branch order
+
+            Node(int bitmap, Object[] entries) {
+                this.bitmap = bitmap;
+                this.entries = entries;
+            }
+
+            static Node of(Placed placed, int shift) {
+                return new Node(1 << ((placed.id() >>> shift) & 31), new Object[] {placed});
+            }
+
+            Node put(Placed placed, int shift) {
+                int id = placed.id();
+                int bit = 1 << ((id >>> shift) & 31);
+                int position = Integer.bitCount(bitmap & (bit - 1));
+                if ((bitmap & bit) == 0) {
+                    Object[] copy = new Object[entries.length + 1];
+                    System.arraycopy(entries, 0, copy, 0, position);
+                    copy[position] = placed;
+                    System.arraycopy(entries, position, copy, position + 1, entries.length - position);
+                    return new Node(bitmap | bit, copy);
+                }
+                Object entry = entries[position];
+                Object replacement;
+                if (entry instanceof Node child) {
+                    replacement = child.put(placed, shift + BITS);
+                } else if (((Placed) entry).id() == id) {
+                    if (entry.equals(placed)) return this;
+                    replacement = placed;
+                } else {
+                    replacement = of((Placed) entry, shift + BITS).put(placed, shift + BITS);
+                }
+                if (replacement == entry) return this;
+                Object[] copy = entries.clone();
+                copy[position] = replacement;
+                return new Node(bitmap, copy);
+            }
+
+            // Returns this when nothing changed, null when empty, or a lone entry to inline in the parent
+            Object remove(int id, int shift) {
+                int bit = 1 << ((id >>> shift) & 31);
+                if ((bitmap & bit) == 0) return this;
+                int position = Integer.bitCount(bitmap & (bit - 1));
+                Object entry = entries[position];
+                Object replacement;
+                if (entry instanceof Node child) {
+                    replacement = child.remove(id, shift + BITS);
+                    if (replacement == child) return this;
+                } else if (((Placed) entry).id() == id) {
+                    replacement = null;
+                } else {
+                    return this;
+                }
+                if (replacement == null) {
+                    if (entries.length == 1) return null;
+                    if (entries.length == 2) {
+                        Object other = entries[1 - position];
+                        if (other instanceof Placed) return other;
+                    }
+                    Object[] copy = new Object[entries.length - 1];
+                    System.arraycopy(entries, 0, copy, 0, position);
+                    System.arraycopy(entries, position + 1, copy, position, copy.length - position);
+                    return new Node(bitmap & ~bit, copy);
+                }
+                if (replacement instanceof Placed && entries.length == 1) return replacement;
+                Object[] copy = entries.clone();
+                copy[position] = replacement;
+                return new Node(bitmap, copy);
+            }
+        }
+    }
+
+    // Open-addressing map from item id to slot position; primitive keys and values, no boxing.
+    // Linear probing with backward-shift deletion, so removals leave no tombstones behind.
+    static final class SlotIndex {
+        private static final int FREE = -1;
+
+        private int[] keys;
+        private int[] positions;
+        private int mask;
+        private int size;
+
+        SlotIndex(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            keys = new int[capacity];
+            positions = new int[capacity];
+            Arrays.fill(positions, FREE);
+            mask = capacity - 1;
+        }
+
+        int get(int key) {
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                if (positions[i] == FREE) return FREE;
+                if (keys[i] == key) return positions[i];
+            }
+        }
+
+        void put(int key, int position) {
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length << 1);
+            }
+            int i = hash(key) & mask;
+            while (positions[i] != FREE) {
+                if (keys[i] == key) {
+                    positions[i] = position;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            positions[i] = position;
+            size++;
+        }
+
+        void remove(int key) {
+            int i = hash(key) & mask;
+            while (keys[i] != key || positions[i] == FREE) {
+                if (positions[i] == FREE) return;
+                i = (i + 1) & mask;
+            }
+            // Shift later entries of the probe run back into the gap
+            int gap = i;
+            for (int j = (i + 1) & mask; positions[j] != FREE; j = (j + 1) & mask) {
+                int home = hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    positions[gap] = positions[j];
+                    gap = j;
+                }
+            }
+            positions[gap] = FREE;
+            size--;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldPositions = positions;
+            keys = new int[capacity];
+            positions = new int[capacity];
+            Arrays.fill(positions, FREE);
+            mask = capacity - 1;
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldPositions[i] != FREE) put(oldKeys[i], oldPositions[i]);
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // Mutable inventory with O(1) add, remove and quantity changes by item id. Slots live in
+    // parallel arrays; a removal moves the last slot into the hole, so slot order is not stable.
+    // Not thread-safe: the engine, snapshot() included, must stay confined to one thread (or be
+    // guarded by a lock, as InventoryService does); the Inventory it returns is immutable and
+    // can then be handed to other threads.
+    static final class InventoryEngine {
+        private final int capacity;
+        private final SlotIndex index;
+        private final ItemStats[] items;
+        private final int[] quantities;
+        private int size;
+        private Inventory snapshot;
+
+        InventoryEngine(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacity = capacity;
+            this.index = new SlotIndex(capacity);
+            this.items = new ItemStats[capacity];
+            this.quantities = new int[capacity];
+        }
+
+        static InventoryEngine from(Inventory inventory) {
+            InventoryEngine engine = new InventoryEngine(Math.max(inventory.capacity(), inventory.slots().size()));
+            inventory.slots().forEach(slot -> engine.add(slot.item(), slot.quantity()));
+            return engine;
+        }
+
+        // Adds to an existing stack of the same item or takes a new slot; returns the new quantity
+        public int add(ItemStats item, int quantity) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive");
+            }
+            int position = index.get(item.id());
+            if (position >= 0) {
+                if (!items[position].equals(item)) {
+                    throw new IllegalArgumentException("Item id " + item.id() + " already holds " + items[position].name());
+                }
+                return changeAt(position, quantity);
+            }
+            if (size >= capacity) {
+                throw new IllegalStateException("Inventory is full");
+            }
+            items[size] = item;
+            quantities[size] = quantity;
+            index.put(item.id(), size++);
+            snapshot = null;
+            return quantity;
+        }
+
+        // Adjusts the quantity of a held item; the slot is freed once it drops to zero
+        public int changeQuantity(int itemId, int delta) {
+            int position = index.get(itemId);
+            if (position < 0) {
+                throw new IllegalArgumentException("No item with id " + itemId);
+            }
+            return changeAt(position, delta);
+        }
+
+        public boolean remove(int itemId) {
+            int position = index.get(itemId);
+            if (position < 0) return false;
+            removeAt(position);
+            return true;
+        }
+
+        public int quantityOf(int itemId) {
+            int position = index.get(itemId);
+            return position < 0 ? 0 : quantities[position];
+        }
+
+        public Optional<InventorySlot> find(int itemId) {
+            int position = index.get(itemId);
+            return position < 0 ? Optional.empty() : Optional.of(new InventorySlot(items[position], quantities[position]));
+        }
+
+        ItemStats item(int itemId) {
+            int position = index.get(itemId);
+            return position < 0 ? null : items[position];
+        }
+
+        public int size() { return size; }
+
+        public int capacity() { return capacity; }
+
+        public boolean isFull() { return size >= capacity; }
+
+        // Immutable view of the current slots, rebuilt only after a mutation
+        public Inventory snapshot() {
+            Inventory current = snapshot;
+            if (current == null) {
+                InventorySlot[] slots = new InventorySlot[size];
+                for (int i = 0; i < size; i++) {
+                    slots[i] = new InventorySlot(items[i], quantities[i]);
+                }
+                current = snapshot = new Inventory(Arrays.asList(slots), capacity);
+            }
+            return current;
+        }
+
+        private int changeAt(int position, int delta) {
+            int quantity = Math.addExact(quantities[position], delta);
+            if (quantity < 0) {
+                throw new IllegalStateException("Only " + quantities[position] + " of " + items[position].name() + " held");
+            }
+            if (quantity == 0) {
+                removeAt(position);
+            } else {
+                quantities[position] = quantity;
+                snapshot = null;
+            }
+            return quantity;
+        }
+
+        private void removeAt(int position) {
+            index.remove(items[position].id());
+            int last = --size;
+            if (position != last) {
+                items[position] = items[last];
+                quantities[position] = quantities[last];
+                index.put(items[position].id(), position);
+            }
+            items[last] = null;
+            snapshot = null;
+        }
+    }
+
+    // Interned item definitions by id: registering an equal definition again returns the instance
+    // already held, so slots built through the catalog share one Item or Weapon (and one name
+    // string) per id. The records still check their own invariants, so raw instances outside the
+    // catalog stay valid. Not thread-safe: fill it on one thread, then publish it safely (e.g.
+    // through a final field or a concurrent collection) before other threads read it.
+    static final class ItemCatalog {
+        private final SlotIndex index = new SlotIndex(64);
+        private ItemStats[] definitions = new ItemStats[64];
+        private int size;
+
+        public ItemStats register(ItemStats definition) {
+            int position = index.get(definition.id());
+            if (position >= 0) {
+                ItemStats existing = definitions[position];
+                if (!existing.equals(definition)) {
+                    throw new IllegalArgumentException("Item id " + definition.id() + " is already registered as " + existing);
+                }
+                return existing;
+            }
+            if (size == definitions.length) {
+                definitions = Arrays.copyOf(definitions, size * 2);
+            }
+            // One shared name string per distinct name across all definitions
+            ItemStats interned = switch (definition) {
+                case Weapon w -> new Weapon(w.id(), w.name().intern(), w.value(), w.damage(), w.durability());
+                case Item i -> new Item(i.id(), i.name().intern(), i.value());
+                default -> definition;
+            };
+            definitions[size] = interned;
+            index.put(interned.id(), size++);
+            return interned;
+        }
+
+        public ItemStats item(int itemId) {
+            int position = index.get(itemId);
+            if (position < 0) {
+                throw new IllegalArgumentException("Unknown item id " + itemId);
+            }
+            return definitions[position];
+        }
+
+        public boolean contains(int itemId) { return index.get(itemId) >= 0; }
+
+        public int size() { return size; }
+
+        public InventorySlot slot(int itemId, int quantity) {
+            return new InventorySlot(item(itemId), quantity);
+        }
+    }
+
+    // Slots as catalog item ids and quantities packed into one long each; InventorySlot views
+    // are created on read
+    static final class CompactSlots {
+        private final ItemCatalog catalog;
+        private long[] packed = new long[16];
+        private int size;
+
+        CompactSlots(ItemCatalog catalog) {
+            this.catalog = catalog;
+        }
+
+        public void add(int itemId, int quantity) {
+            if (!catalog.contains(itemId)) {
+                throw new IllegalArgumentException("Unknown item id " + itemId);
+            }
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive");
+            }
+            if (size == packed.length) {
+                packed = Arrays.copyOf(packed, size + (size >> 1));
+            }
+            packed[size++] = (long) itemId << 32 | quantity;
+        }
+
+        public int itemId(int index) { return (int) (packed[Objects.checkIndex(index, size)] >>> 32); }
+
+        public int quantity(int index) { return (int) packed[Objects.checkIndex(index, size)]; }
+
+        public InventorySlot slot(int index) {
+            return new InventorySlot(catalog.item(itemId(index)), quantity(index));
+        }
+
+        public int size() { return size; }
+    }
+
+    record TransferLine(int itemId, int quantity) {
+        public TransferLine {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive");
+            }
+        }
+    }
+
+    // Inventories of many players, each an InventoryEngine guarded by one of a fixed set of lock
+    // stripes chosen by player id. Transfers lock both stripes in index order, so two opposite
+    // trades can never wait on each other; a single stripe degenerates into one global lock.
+    static final class InventoryService {
+        private final ConcurrentHashMap<Integer, InventoryEngine> inventories = new ConcurrentHashMap<>();
+        private final ReentrantLock[] stripes;
+        private final int mask;
+
+        InventoryService() {
+            this(Runtime.getRuntime().availableProcessors() * 4);
+        }
+
+        InventoryService(int stripeCount) {
+            int count = Integer.highestOneBit(Math.max(1, stripeCount * 2 - 1));
+            stripes = new ReentrantLock[count];
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new ReentrantLock();
+            }
+            mask = count - 1;
+        }
+
+        public void open(int playerId, int capacity) {
+            if (inventories.putIfAbsent(playerId, new InventoryEngine(capacity)) != null) {
+                throw new IllegalArgumentException("Player " + playerId + " already has an inventory");
+            }
+        }
+
+        // Returns false when the item needs a new slot and the inventory is full
+        public boolean loot(int playerId, ItemStats item, int quantity) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive");
+            }
+            InventoryEngine inventory = inventoryOf(playerId);
+            ReentrantLock lock = stripes[stripeOf(playerId)];
+            lock.lock();
+            try {
+                if (inventory.isFull() && inventory.quantityOf(item.id()) == 0) return false;
+                inventory.add(item, quantity);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Returns false when fewer than quantity are held
+        public boolean consume(int playerId, int itemId, int quantity) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive");
+            }
+            InventoryEngine inventory = inventoryOf(playerId);
+            ReentrantLock lock = stripes[stripeOf(playerId)];
+            lock.lock();
+            try {
+                if (inventory.quantityOf(itemId) < quantity) return false;
+                inventory.changeQuantity(itemId, -quantity);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Moves all lines or none: false when the source lacks an item or the target lacks room
+        public boolean transfer(int fromPlayer, int toPlayer, List<TransferLine> lines) {
+            if (fromPlayer == toPlayer) {
+                throw new IllegalArgumentException("Cannot transfer to the same inventory");
+            }
+            InventoryEngine from = inventoryOf(fromPlayer);
+            InventoryEngine to = inventoryOf(toPlayer);
+            int first = stripeOf(fromPlayer);
+            int second = stripeOf(toPlayer);
+            if (first > second) {
+                int swap = first;
+                first = second;
+                second = swap;
+            }
+            stripes[first].lock();
+            if (second != first) stripes[second].lock();
+            try {
+                if (!canTransfer(from, to, lines)) return false;
+                for (TransferLine line : lines) {
+                    ItemStats item = from.item(line.itemId());
+                    from.changeQuantity(line.itemId(), -line.quantity());
+                    to.add(item, line.quantity());
+                }
+                return true;
+            } finally {
+                if (second != first) stripes[second].unlock();
+                stripes[first].unlock();
+            }
+        }
+
+        public Inventory snapshot(int playerId) {
+            InventoryEngine inventory = inventoryOf(playerId);
+            ReentrantLock lock = stripes[stripeOf(playerId)];
+            lock.lock();
+            try {
+                return inventory.snapshot();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static boolean canTransfer(InventoryEngine from, InventoryEngine to, List<TransferLine> lines) {
+            int newSlots = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                int itemId = lines.get(i).itemId();
+                int requested = 0;
+                boolean firstLine = true;
+                for (int j = 0; j < lines.size(); j++) {
+                    if (lines.get(j).itemId() != itemId) continue;
+                    firstLine &= j >= i;
+                    requested += lines.get(j).quantity();
+                }
+                if (!firstLine) continue;
+                if (from.quantityOf(itemId) < requested) return false;
+                ItemStats held = to.item(itemId);
+                if (held == null) {
+                    newSlots++;
+                } else if (!held.equals(from.item(itemId))) {
+                    return false;
+                }
+            }
+            return to.size() + newSlots <= to.capacity();
+        }
+
+        private InventoryEngine inventoryOf(int playerId) {
+            InventoryEngine inventory = inventories.get(playerId);
+            if (inventory == null) {
+                throw new IllegalArgumentException("No inventory for player " + playerId);
+            }
+            return inventory;
+        }
+
+        private int stripeOf(int playerId) {
+            int h = playerId * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    // Quantity changes by id: copying the slot list (the original record), the persistent record
+    // and the mutable engine
+    static void engineBenchmark(int slots, int operations) {
+        Random random = new Random(7);
+        InventoryEngine engine = new InventoryEngine(slots);
+        for (int id = 0; id < slots; id++) {
+            engine.add(new Item(id * 31 + 5, "Item " + id, id % 500), 1 + random.nextInt(20));
+        }
+        int[] ids = new int[operations];
+        for (int i = 0; i < operations; i++) {
+            ids[i] = random.nextInt(slots) * 31 + 5;
+        }
+
+        // Each change through the list means finding the slot and copying the list
+        List<InventorySlot> list = List.copyOf(engine.snapshot().slots());
+        int copyOperations = operations / 100;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < copyOperations; i++) {
+            List<InventorySlot> copy = new ArrayList<>(list);
+            for (int s = 0; s < copy.size(); s++) {
+                InventorySlot slot = copy.get(s);
+                if (slot.item().id() == ids[i]) {
+                    copy.set(s, new InventorySlot(slot.item(), slot.quantity() + 1));
+                    break;
+                }
+            }
+            list = List.copyOf(copy);
+        }
+        long t1 = System.nanoTime();
+        Inventory inventory = engine.snapshot();
+        for (int i = 0; i < operations; i++) {
+            inventory = inventory.add(inventory.find(ids[i]).orElseThrow().item(), 1);
+        }
+        long t2 = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            engine.changeQuantity(ids[i], 1);
+        }
+        long t3 = System.nanoTime();
+
+        System.out.printf("%n%,d slots: list copy %.0f ns/change, persistent record %.0f ns/change, engine %.0f ns/change%n",
+                slots, (t1 - t0) / (double) copyOperations, (t2 - t1) / (double) operations,
+                (t3 - t2) / (double) operations);
     }
 
-    public static void main(String[] args) {
-        // Create items
-        Item potion = new Item(1, "Health Potion", 50);
-        Weapon sword = new Weapon(2, "Steel Sword", 100, 25, 100);
+    // Retained heap and time for a history of versions, each changing one slot's quantity:
+    // full slot-list copies per version vs. the persistent Inventory
+    static void historyBenchmark(int slots, int versions) {
+        Random random = new Random(13);
+        Inventory base = Inventory.empty(slots);
+        for (int id = 0; id < slots; id++) {
+            base = base.add(new Item(id, "Item " + id, id % 500), 1 + random.nextInt(20));
+        }
+        int[] ids = random.ints(versions, 0, slots).toArray();
+
+        long before = usedHeap();
+        long t0 = System.nanoTime();
+        List<List<InventorySlot>> copies = new ArrayList<>(versions);
+        List<InventorySlot> current = List.copyOf(base.slots());
+        for (int i = 0; i < versions; i++) {
+            InventorySlot[] next = current.toArray(InventorySlot[]::new);
+            for (int s = 0; s < next.length; s++) {
+                if (next[s].item().id() == ids[i]) {
+                    next[s] = new InventorySlot(next[s].item(), next[s].quantity() + 1);
+                    break;
+                }
+            }
+            copies.add(current = List.of(next));
+        }
+        long t1 = System.nanoTime();
+        long copyBytes = usedHeap() - before;
+        int copyVersions = copies.size();
+        copies = null;
+
+        before = usedHeap();
+        long t2 = System.nanoTime();
+        List<Inventory> history = new ArrayList<>(versions);
+        Inventory inventory = base;
+        for (int i = 0; i < versions; i++) {
+            history.add(inventory = inventory.add(inventory.find(ids[i]).orElseThrow().item(), 1));
+        }
+        long t3 = System.nanoTime();
+        long persistentBytes = usedHeap() - before;
+
+        System.out.printf("%n%,d versions of %,d slots: copies ~%,d KB in %.0f ms, persistent ~%,d KB in %.0f ms (same history: %b)%n",
+                versions, slots, copyBytes / 1024, (t1 - t0) / 1e6, persistentBytes / 1024, (t3 - t2) / 1e6,
+                copyVersions == history.size());
+    }
+
+    // Loot drops and two-item trades from several threads: one global lock vs. striped locks
+    static void serviceBenchmark(int players, int operationsPerThread) throws InterruptedException {
+        Item[] items = new Item[200];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(i, "Item " + i, i);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        serviceRound(items, players, 2, cores * 4, operationsPerThread / 2); // warm-up
+        System.out.printf("%n%,d players, %d cores%n", players, cores);
+        for (int threads = 1; threads <= Math.max(4, cores * 2); threads *= 2) {
+            for (int stripes : new int[] {1, cores * 4}) {
+                System.out.println(serviceRound(items, players, threads, stripes, operationsPerThread));
+            }
+        }
+    }
+
+    private static String serviceRound(Item[] items, int players, int threads, int stripes, int operationsPerThread)
+            throws InterruptedException {
+        InventoryService service = new InventoryService(stripes);
+        long seeded = 0;
+        for (int player = 0; player < players; player++) {
+            service.open(player, 64);
+            for (int i = 0; i < 8; i++) {
+                service.loot(player, items[(player + i * 13) % items.length], 10);
+                seeded += 10;
+            }
+        }
+
+        LongAdder looted = new LongAdder();
+        LongAdder trades = new LongAdder();
+        List<Thread> workers = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int op = 0; op < operationsPerThread; op++) {
+                    int player = random.nextInt(players);
+                    if (random.nextInt(5) == 0) {
+                        if (service.loot(player, items[random.nextInt(items.length)], 1)) looted.increment();
+                    } else {
+                        // Items the player was seeded with, so trades succeed until stock moves around
+                        int other = (player + 1 + random.nextInt(players - 1)) % players;
+                        List<TransferLine> lines = List.of(
+                                new TransferLine((player + random.nextInt(8) * 13) % items.length, 1),
+                                new TransferLine((player + random.nextInt(8) * 13) % items.length, 1));
+                        if (service.transfer(player, other, lines)) trades.increment();
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - t0;
+
+        long total = 0;
+        for (int player = 0; player < players; player++) {
+            for (InventorySlot slot : service.snapshot(player).slots()) {
+                total += slot.quantity();
+            }
+        }
+        return "%d threads, %3d stripes: %,.0f ops/s, %,d trades, items conserved: %b".formatted(
+                threads, stripes, threads * (double) operationsPerThread / (elapsed / 1e9), trades.sum(),
+                total == seeded + looted.sum());
+    }
+
+    // A million slots over 1,000 definitions: an Item or Weapon per slot, slots sharing catalog
+    // instances, and packed catalog ids
+    static void catalogBenchmark(int slots, int definitions) {
+        Random random = new Random(17);
+        int[] ids = random.ints(slots, 0, definitions).toArray();
+
+        long before = usedHeap();
+        List<InventorySlot> ownItems = new ArrayList<>(slots);
+        for (int id : ids) {
+            ownItems.add(new InventorySlot(definition(id), 1 + id % 20));
+        }
+        long ownBytes = usedHeap() - before;
+        int ownSize = ownItems.size();
+        ownItems = null;
+
+        before = usedHeap();
+        ItemCatalog catalog = new ItemCatalog();
+        for (int id = 0; id < definitions; id++) {
+            catalog.register(definition(id));
+        }
+        List<InventorySlot> sharedItems = new ArrayList<>(slots);
+        for (int id : ids) {
+            sharedItems.add(catalog.slot(id, 1 + id % 20));
+        }
+        long sharedBytes = usedHeap() - before;
+        int sharedSize = sharedItems.size();
+        sharedItems = null;
+
+        before = usedHeap();
+        CompactSlots compact = new CompactSlots(catalog);
+        for (int id : ids) {
+            compact.add(id, 1 + id % 20);
+        }
+        long compactBytes = usedHeap() - before;
+
+        System.out.printf("%n%,d slots: own items ~%,d KB, catalog items ~%,d KB, packed ids ~%,d KB (sizes match: %b)%n",
+                slots, ownBytes / 1024, sharedBytes / 1024, compactBytes / 1024,
+                ownSize == sharedSize && sharedSize == compact.size());
+    }
+
+    // Every call builds fresh instances and name strings, as loading slots one by one would
+    private static ItemStats definition(int id) {
+        return id % 4 == 0
+                ? new Weapon(id, "Weapon " + id, 100 + id, 10 + id % 40, 100)
+                : new Item(id, "Item " + id, id % 500);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // Create items; the catalog interns each definition
+        ItemCatalog catalog = new ItemCatalog();
+        Item potion = (Item) catalog.register(new Item(1, "Health Potion", 50));
+        Weapon sword = (Weapon) catalog.register(new Weapon(2, "Steel Sword", 100, 25, 100));
 
         // Create inventory slots
         InventorySlot potionSlot = new InventorySlot(potion, 5);
@@ -98,5 +1110,44 @@ public class GameInventoryExercise {
         // Demonstrate equality
         Item potion2 = new Item(1, "Health Potion", 50);
         System.out.println("Potions equal: " + potion.equals(potion2));
+        System.out.println("Same catalog instance: " + (catalog.register(potion2) == potion));
+        try {
+            catalog.register(new Weapon(4, "Broken Bow", 30, 0, 10));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Rejected: " + e.getMessage());
+        }
+
+        // Mutate through the engine, hand out immutable snapshots
+        InventoryEngine engine = InventoryEngine.from(inventory);
+        engine.add(potion2, 3);
+        engine.add(new Item(3, "Mana Potion", 60), 2);
+        engine.changeQuantity(sword.id(), -1);
+        System.out.println("Engine potions: " + engine.quantityOf(potion.id()) + ", slots: " + engine.snapshot().slots());
+
+        // Each change returns a new version; the previous one is untouched
+        Inventory restocked = inventory.add(potion, 10).without(sword.id());
+        System.out.println("Versions: " + inventory.find(potion.id()).orElseThrow().quantity()
+                + " -> " + restocked.find(potion.id()).orElseThrow().quantity() + " potions, sword kept: "
+                + inventory.find(sword.id()).isPresent() + " -> " + restocked.find(sword.id()).isPresent());
+        Inventory twoStacks = new Inventory(List.of(swordSlot, potionSlot, new InventorySlot(potion, 2)), 10);
+        System.out.println("Two slots for one item: " + twoStacks.slots().size() + " slots, first stack "
+                + twoStacks.find(potion.id()).orElseThrow().quantity() + ", after without: "
+                + twoStacks.without(potion.id()).slots());
+
+        engineBenchmark(1_000, 1_000_000);
+        historyBenchmark(1_000, 100_000);
+
+        // Two players trade under the service; a trade the source cannot cover changes nothing
+        InventoryService service = new InventoryService();
+        service.open(1, 10);
+        service.open(2, 10);
+        service.loot(1, potion, 5);
+        service.loot(1, sword, 1);
+        boolean traded = service.transfer(1, 2, List.of(new TransferLine(potion.id(), 2), new TransferLine(sword.id(), 1)));
+        boolean overdrawn = service.transfer(2, 1, List.of(new TransferLine(potion.id(), 1), new TransferLine(sword.id(), 2)));
+        System.out.println("Trade: " + traded + ", overdrawn trade: " + overdrawn + ", player 2: " + service.snapshot(2).slots());
+
+        serviceBenchmark(10_000, 200_000);
+        catalogBenchmark(1_000_000, 1_000);
     }
 }
@@ -1,6 +1,10 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.SequencedCollection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TaskQueueExercise {
 
@@ -15,28 +19,236 @@ public class TaskQueueExercise {
         // }
     }
 
+    // Which end of the queue an operation touched
+    enum End { FIRST, LAST }
+
+    // Observer for queue operations; depth is the queue size after the operation
+    interface TaskQueueListener {
+        default void onEnqueue(Task task, End end, int depth) {}
+
+        // waitNanos is the time the task spent in the queue, or -1 if unknown
+        default void onDequeue(Task task, End end, int depth, long waitNanos) {}
+    }
+
+    // Prints every operation, matching the queue's former console output
+    static class ConsoleListener implements TaskQueueListener {
+        @Override
+        public void onEnqueue(Task task, End end, int depth) {
+            System.out.println((end == End.FIRST ? "Added urgent task: " : "Added regular task: ") + task);
+        }
+
+        @Override
+        public void onDequeue(Task task, End end, int depth, long waitNanos) {
+            System.out.println((end == End.FIRST ? "Processing next task: " : "Processing last task: ") + task);
+        }
+    }
+
+    // Operation counters plus current and peak depth; safe to share across queues and threads
+    static class TaskCounters implements TaskQueueListener {
+        private final LongAdder urgentEnqueued = new LongAdder();
+        private final LongAdder regularEnqueued = new LongAdder();
+        private final LongAdder dequeued = new LongAdder();
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+        private volatile int depth;
+
+        @Override
+        public void onEnqueue(Task task, End end, int depth) {
+            (end == End.FIRST ? urgentEnqueued : regularEnqueued).increment();
+            maxDepth.accumulate(depth);
+            this.depth = depth;
+        }
+
+        @Override
+        public void onDequeue(Task task, End end, int depth, long waitNanos) {
+            dequeued.increment();
+            this.depth = depth;
+        }
+
+        public long urgentEnqueued() { return urgentEnqueued.sum(); }
+
+        public long regularEnqueued() { return regularEnqueued.sum(); }
+
+        public long dequeued() { return dequeued.sum(); }
+
+        public int depth() { return depth; }
+
+        public long maxDepth() { return maxDepth.get(); }
+
+        @Override
+        public String toString() {
+            return "urgent=%d regular=%d dequeued=%d depth=%d maxDepth=%d".formatted(
+                    urgentEnqueued(), regularEnqueued(), dequeued(), depth(), maxDepth()
+            );
+        }
+    }
+
+    // Wait-time histogram with power-of-two nanosecond buckets (bucket i holds [2^(i-1), 2^i))
+    static class WaitTimeHistogram implements TaskQueueListener {
+        private static final int BUCKETS = 64;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+
+        @Override
+        public void onDequeue(Task task, End end, int depth, long waitNanos) {
+            if (waitNanos < 0)
+                return;
+            counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(waitNanos));
+            total.increment();
+        }
+
+        public long count() { return total.sum(); }
+
+        // Upper bound (exclusive) in nanoseconds of the bucket containing the given quantile
+        public long percentileUpperBound(double quantile) {
+            long target = (long) Math.ceil(quantile * count());
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= target && seen > 0)
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "count=%d p50<%dns p99<%dns".formatted(
+                    count(), percentileUpperBound(0.5), percentileUpperBound(0.99)
+            );
+        }
+    }
+
+    // Growable ring buffer of enqueue timestamps mirroring the task order
+    private static class TimestampDeque {
+        private long[] stamps = new long[16];
+        private int head;
+        private int size;
+
+        void addFirst(long stamp) {
+            ensureCapacity();
+            head = (head - 1) & (stamps.length - 1);
+            stamps[head] = stamp;
+            size++;
+        }
+
+        void addLast(long stamp) {
+            ensureCapacity();
+            stamps[(head + size) & (stamps.length - 1)] = stamp;
+            size++;
+        }
+
+        long removeFirst() {
+            long stamp = stamps[head];
+            head = (head + 1) & (stamps.length - 1);
+            size--;
+            return stamp;
+        }
+
+        long removeLast() {
+            size--;
+            return stamps[(head + size) & (stamps.length - 1)];
+        }
+
+        int size() { return size; }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        private void ensureCapacity() {
+            if (size < stamps.length)
+                return;
+            long[] grown = new long[stamps.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = stamps[(head + i) & (stamps.length - 1)];
+            }
+            stamps = grown;
+            head = 0;
+        }
+    }
+
     static class TaskQueue {
+        private static final TaskQueueListener[] NO_LISTENERS = new TaskQueueListener[0];
+
         private final SequencedCollection<Task> tasks;
+        private final TimestampDeque enqueueTimes = new TimestampDeque();
+        // Copy-on-write so the hot path only reads one field and never allocates
+        private volatile TaskQueueListener[] listeners = NO_LISTENERS;
 
         public TaskQueue(SequencedCollection<Task> tasks) {
             this.tasks = tasks;
         }
 
+        public synchronized void addListener(TaskQueueListener listener) {
+            if (listeners.length == 0) {
+                // Tasks queued before anyone listened get "now" as their enqueue time
+                enqueueTimes.clear();
+                long now = System.nanoTime();
+                for (int i = 0; i < tasks.size(); i++) {
+                    enqueueTimes.addLast(now);
+                }
+            }
+            TaskQueueListener[] current = listeners;
+            TaskQueueListener[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+            listeners = updated;
+        }
+
+        public synchronized void removeListener(TaskQueueListener listener) {
+            listeners = Arrays.stream(listeners)
+                    .filter(l -> l != listener)
+                    .toArray(TaskQueueListener[]::new);
+        }
+
         public void addUrgentTask(Task task) {
             tasks.addFirst(task);
-            System.out.println("Added urgent task: " + task);
+            TaskQueueListener[] ls = listeners;
+            if (ls.length == 0)
+                return;
+            enqueueTimes.addFirst(System.nanoTime());
+            int depth = tasks.size();
+            for (TaskQueueListener l : ls) {
+                try {
+                    l.onEnqueue(task, End.FIRST, depth);
+                } catch (RuntimeException e) {
+                    listenerFailed(l, e);
+                }
+            }
         }
 
         public void addRegularTask(Task task) {
             tasks.addLast(task);
-            System.out.println("Added regular task: " + task);
+            TaskQueueListener[] ls = listeners;
+            if (ls.length == 0)
+                return;
+            enqueueTimes.addLast(System.nanoTime());
+            int depth = tasks.size();
+            for (TaskQueueListener l : ls) {
+                try {
+                    l.onEnqueue(task, End.LAST, depth);
+                } catch (RuntimeException e) {
+                    listenerFailed(l, e);
+                }
+            }
         }
 
         public Task processNextTask() {
             if (tasks.isEmpty())
                 return null;
             Task task = tasks.removeFirst();
-            System.out.println("Processing next task: " + task);
+            TaskQueueListener[] ls = listeners;
+            if (ls.length == 0)
+                return task;
+            long waitNanos = waitTime(End.FIRST);
+            int depth = tasks.size();
+            for (TaskQueueListener l : ls) {
+                try {
+                    l.onDequeue(task, End.FIRST, depth, waitNanos);
+                } catch (RuntimeException e) {
+                    listenerFailed(l, e);
+                }
+            }
             return task;
         }
 
@@ -44,10 +256,41 @@ public class TaskQueueExercise {
             if (tasks.isEmpty())
                 return null;
             Task task = tasks.removeLast();
-            System.out.println("Processing last task: " + task);
+            TaskQueueListener[] ls = listeners;
+            if (ls.length == 0)
+                return task;
+            long waitNanos = waitTime(End.LAST);
+            int depth = tasks.size();
+            for (TaskQueueListener l : ls) {
+                try {
+                    l.onDequeue(task, End.LAST, depth, waitNanos);
+                } catch (RuntimeException e) {
+                    listenerFailed(l, e);
+                }
+            }
             return task;
         }
 
+        // -1 when the timestamps no longer mirror the tasks (e.g. modified through a view); the
+        // remaining tasks then restart their clocks at "now" so later wait times are tracked again
+        private long waitTime(End end) {
+            if (enqueueTimes.size() != tasks.size() + 1) {
+                enqueueTimes.clear();
+                long now = System.nanoTime();
+                for (int i = 0; i < tasks.size(); i++) {
+                    enqueueTimes.addLast(now);
+                }
+                return -1;
+            }
+            long enqueued = end == End.FIRST ? enqueueTimes.removeFirst() : enqueueTimes.removeLast();
+            return System.nanoTime() - enqueued;
+        }
+
+        // A failing listener must not cost the caller the task or the other listeners their event
+        private static void listenerFailed(TaskQueueListener listener, RuntimeException e) {
+            System.err.println("Task queue listener " + listener.getClass().getName() + " failed: " + e);
+        }
+
         public SequencedCollection<Task> getReversedView() { return tasks.reversed(); }
 
         public void modifyAndShowSync() {
@@ -72,11 +315,33 @@ public class TaskQueueExercise {
         // Test with ArrayList
         System.out.println("Testing with ArrayList:");
         TaskQueue arrayListQueue = new TaskQueue(new ArrayList<>());
+        arrayListQueue.addListener(new ConsoleListener());
         testTaskQueue(arrayListQueue);
 
         System.out.println("\nTesting with LinkedList:");
         TaskQueue linkedListQueue = new TaskQueue(new LinkedList<>());
+        linkedListQueue.addListener(new ConsoleListener());
         testTaskQueue(linkedListQueue);
+
+        // Metrics without console I/O
+        System.out.println("\nQueue metrics:");
+        TaskCounters counters = new TaskCounters();
+        WaitTimeHistogram waitTimes = new WaitTimeHistogram();
+        TaskQueue meteredQueue = new TaskQueue(new ArrayList<>());
+        meteredQueue.addListener(counters);
+        meteredQueue.addListener(waitTimes);
+        for (int i = 0; i < 10_000; i++) {
+            meteredQueue.addRegularTask(new Task("REG" + i, "Regular Task " + i, 3));
+            if (i % 4 == 0)
+                meteredQueue.addUrgentTask(new Task("URG" + i, "Urgent Task " + i, 1));
+            if (i % 2 == 0)
+                meteredQueue.processNextTask();
+        }
+        while (meteredQueue.processNextTask() != null) {
+            // drain
+        }
+        System.out.println("Counters: " + counters);
+        System.out.println("Wait times: " + waitTimes);
     }
 
     private static void testTaskQueue(TaskQueue queue) {
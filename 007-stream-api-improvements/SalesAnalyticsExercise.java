@@ -1,5 +1,37 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class SalesAnalyticsExercise {
 
@@ -30,6 +62,943 @@ public class SalesAnalyticsExercise {
         }
     }
 
+    // Append-only mapping between distinct strings and dense int codes
+    static class StringDictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        public int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        // -1 if the value has never been encoded
+        public int codeOf(String value) {
+            return codes.getOrDefault(value, -1);
+        }
+
+        public String decode(int code) { return values.get(code); }
+
+        public int size() { return values.size(); }
+    }
+
+    // Columnar sales store: amounts inline in a double[], category and product as dictionary codes
+    static class SalesTable {
+        private final StringDictionary categories;
+        private final StringDictionary products;
+        private double[] amounts;
+        private int[] categoryCodes;
+        private int[] productCodes;
+        private int size;
+
+        public SalesTable() {
+            this(new StringDictionary(), new StringDictionary(), 16);
+        }
+
+        private SalesTable(StringDictionary categories, StringDictionary products, int initialCapacity) {
+            this.categories = categories;
+            this.products = products;
+            this.amounts = new double[initialCapacity];
+            this.categoryCodes = new int[initialCapacity];
+            this.productCodes = new int[initialCapacity];
+        }
+
+        public static SalesTable from(List<Sale> sales) {
+            SalesTable table = new SalesTable(new StringDictionary(), new StringDictionary(), Math.max(16, sales.size()));
+            sales.forEach(table::append);
+            return table;
+        }
+
+        public void append(Sale sale) {
+            append(sale.product(), sale.amount(), sale.category());
+        }
+
+        public void append(String product, double amount, String category) {
+            appendEncoded(products.encode(product), amount, categories.encode(category));
+        }
+
+        // Appends a row whose strings were already encoded with this table's dictionaries
+        void appendEncoded(int productCode, double amount, int categoryCode) {
+            if (size == amounts.length) {
+                int capacity = amounts.length * 2;
+                amounts = Arrays.copyOf(amounts, capacity);
+                categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+                productCodes = Arrays.copyOf(productCodes, capacity);
+            }
+            amounts[size] = amount;
+            categoryCodes[size] = categoryCode;
+            productCodes[size] = productCode;
+            size++;
+        }
+
+        public int size() { return size; }
+
+        public StringDictionary categories() { return categories; }
+
+        public StringDictionary products() { return products; }
+
+        public double amount(int row) {
+            Objects.checkIndex(row, size);
+            return amounts[row];
+        }
+
+        public String category(int row) {
+            Objects.checkIndex(row, size);
+            return categories.decode(categoryCodes[row]);
+        }
+
+        public String product(int row) {
+            Objects.checkIndex(row, size);
+            return products.decode(productCodes[row]);
+        }
+
+        public Sale row(int row) {
+            return new Sale(product(row), amount(row), category(row));
+        }
+
+        public List<Sale> toList() {
+            List<Sale> sales = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                sales.add(row(i));
+            }
+            return sales;
+        }
+
+        // Rows of one category; the result shares this table's dictionaries
+        public SalesTable whereCategory(String category) {
+            SalesTable result = new SalesTable(categories, products, 16);
+            int code = categories.codeOf(category);
+            for (int i = 0; i < size; i++) {
+                if (categoryCodes[i] == code) {
+                    result.appendEncoded(productCodes[i], amounts[i], code);
+                }
+            }
+            return result;
+        }
+
+        public SalesStats statsFor(String category) {
+            int code = categories.codeOf(category);
+            double sum = 0;
+            long count = 0;
+            for (int i = 0; i < size; i++) {
+                if (categoryCodes[i] == code) {
+                    sum += amounts[i];
+                    count++;
+                }
+            }
+            return new SalesStats(category, count > 0 ? sum / count : 0, sum, count);
+        }
+
+        // One scan with per-code array accumulators, in category code order
+        public Map<String, SalesStats> statsByCategory() {
+            int numberOfCategories = categories.size();
+            double[] sums = new double[numberOfCategories];
+            long[] counts = new long[numberOfCategories];
+            for (int i = 0; i < size; i++) {
+                sums[categoryCodes[i]] += amounts[i];
+                counts[categoryCodes[i]]++;
+            }
+            Map<String, SalesStats> result = new LinkedHashMap<>();
+            for (int code = 0; code < numberOfCategories; code++) {
+                if (counts[code] > 0) {
+                    String category = categories.decode(code);
+                    result.put(category, new SalesStats(category, sums[code] / counts[code], sums[code], counts[code]));
+                }
+            }
+            return result;
+        }
+    }
+
+    // Result of an ingestion run with its throughput
+    record IngestResult<T>(T value, long rows, long bytes, long elapsedNanos) {
+        public double rowsPerSecond() { return rows * 1e9 / elapsedNanos; }
+
+        public double megabytesPerSecond() { return bytes / (1024.0 * 1024.0) * 1e9 / elapsedNanos; }
+
+        @Override
+        public String toString() {
+            return "%,d rows, %.1f MB in %.1f ms (%,.0f rows/s, %.1f MB/s)".formatted(
+                    rows, bytes / (1024.0 * 1024.0), elapsedNanos / 1e6, rowsPerSecond(), megabytesPerSecond()
+            );
+        }
+    }
+
+    // Reads "product,amount,category" CSV lines (unquoted, UTF-8) from a memory-mapped file.
+    // The file is split on line boundaries and the splits are parsed in parallel straight from
+    // the mapped bytes; strings are only created once per distinct product or category.
+    static class SalesCsvReader {
+        // Keeps each mapping well below the 2 GB MappedByteBuffer limit
+        private static final long MAX_SPLIT_BYTES = 1L << 30;
+
+        private final boolean hasHeader;
+
+        public SalesCsvReader(boolean hasHeader) {
+            this.hasHeader = hasHeader;
+        }
+
+        public IngestResult<SalesTable> load(Path file) throws IOException {
+            long start = System.nanoTime();
+            List<Split> splits = parse(file, true);
+            SalesTable table = new SalesTable();
+            long rows = 0;
+            for (Split split : splits) {
+                int[] products = split.products.remap(table.products());
+                int[] categories = split.categories.remap(table.categories());
+                for (int i = 0; i < split.rows; i++) {
+                    table.appendEncoded(products[split.productCodes[i]], split.amounts[i], categories[split.categoryCodes[i]]);
+                }
+                rows += split.rows;
+            }
+            return new IngestResult<>(table, rows, Files.size(file), System.nanoTime() - start);
+        }
+
+        // Per-category stats without keeping any rows
+        public IngestResult<Map<String, SalesStats>> aggregate(Path file) throws IOException {
+            long start = System.nanoTime();
+            List<Split> splits = parse(file, false);
+            Map<String, DoubleSummaryStatistics> summaries = new LinkedHashMap<>();
+            long rows = 0;
+            for (Split split : splits) {
+                for (int code = 0; code < split.categories.size(); code++) {
+                    DoubleSummaryStatistics partial = new DoubleSummaryStatistics(
+                            split.counts[code], split.minimums[code], split.maximums[code], split.sums[code]
+                    );
+                    summaries.computeIfAbsent(split.categories.decode(code), c -> new DoubleSummaryStatistics())
+                            .combine(partial);
+                }
+                rows += split.rows;
+            }
+            Map<String, SalesStats> result = new LinkedHashMap<>();
+            summaries.forEach((category, summary) -> result.put(category, toStats(category, summary)));
+            return new IngestResult<>(result, rows, Files.size(file), System.nanoTime() - start);
+        }
+
+        private List<Split> parse(Path file, boolean keepRows) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long[] bounds = splitBounds(channel);
+                return IntStream.range(0, bounds.length - 1)
+                        .parallel()
+                        .mapToObj(i -> {
+                            try {
+                                MappedByteBuffer buffer = channel.map(
+                                        FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]
+                                );
+                                return new Split(keepRows).parse(buffer);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .toList();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        // Split start offsets, each moved forward to the start of a line, plus the file size
+        private long[] splitBounds(FileChannel channel) throws IOException {
+            long size = channel.size();
+            long first = hasHeader ? nextLineStart(channel, 0) : 0;
+            int count = (int) Math.max(
+                    Runtime.getRuntime().availableProcessors(),
+                    (size + MAX_SPLIT_BYTES - 1) / MAX_SPLIT_BYTES
+            );
+            count = (int) Math.max(1, Math.min(count, (size - first) / 4096));
+            long[] bounds = new long[count + 1];
+            bounds[0] = first;
+            for (int i = 1; i < count; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, first + (size - first) * i / count));
+            }
+            bounds[count] = size;
+            return bounds;
+        }
+
+        private static long nextLineStart(FileChannel channel, long position) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long size = channel.size();
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n')
+                        return position + i + 1;
+                }
+                position += read;
+            }
+            return size;
+        }
+    }
+
+    // Columns (or running sums) parsed from one split of the file
+    private static class Split {
+        private final boolean keepRows;
+        private final ByteDictionary products = new ByteDictionary();
+        private final ByteDictionary categories = new ByteDictionary();
+        private double[] amounts = new double[0];
+        private int[] productCodes = new int[0];
+        private int[] categoryCodes = new int[0];
+        private double[] sums = new double[0];
+        private long[] counts = new long[0];
+        private double[] minimums = new double[0];
+        private double[] maximums = new double[0];
+        private int rows;
+
+        Split(boolean keepRows) {
+            this.keepRows = keepRows;
+            if (keepRows) {
+                amounts = new double[1024];
+                productCodes = new int[1024];
+                categoryCodes = new int[1024];
+            }
+        }
+
+        Split parse(ByteBuffer buffer) {
+            int limit = buffer.limit();
+            int position = 0;
+            while (position < limit) {
+                int lineEnd = position;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int end = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (end > position) {
+                    parseLine(buffer, position, end);
+                }
+                position = lineEnd + 1;
+            }
+            return this;
+        }
+
+        private void parseLine(ByteBuffer buffer, int start, int end) {
+            int firstComma = indexOf(buffer, ',', start, end);
+            int secondComma = indexOf(buffer, ',', firstComma + 1, end);
+            if (firstComma < 0 || secondComma < 0) {
+                throw new IllegalArgumentException("Malformed sales line: " + text(buffer, start, end));
+            }
+            int product = products.encode(buffer, start, firstComma);
+            double amount = parseAmount(buffer, firstComma + 1, secondComma);
+            int category = categories.encode(buffer, secondComma + 1, end);
+            if (keepRows) {
+                appendRow(product, amount, category);
+            } else {
+                accumulate(amount, category);
+            }
+            rows++;
+        }
+
+        private void appendRow(int product, double amount, int category) {
+            if (rows == amounts.length) {
+                amounts = Arrays.copyOf(amounts, rows * 2);
+                productCodes = Arrays.copyOf(productCodes, rows * 2);
+                categoryCodes = Arrays.copyOf(categoryCodes, rows * 2);
+            }
+            amounts[rows] = amount;
+            productCodes[rows] = product;
+            categoryCodes[rows] = category;
+        }
+
+        private void accumulate(double amount, int category) {
+            if (category == sums.length) {
+                int capacity = Math.max(8, sums.length * 2);
+                sums = Arrays.copyOf(sums, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                minimums = Arrays.copyOf(minimums, capacity);
+                maximums = Arrays.copyOf(maximums, capacity);
+            }
+            if (counts[category] == 0) {
+                minimums[category] = amount;
+                maximums[category] = amount;
+            }
+            sums[category] += amount;
+            counts[category]++;
+            minimums[category] = Math.min(minimums[category], amount);
+            maximums[category] = Math.max(maximums[category], amount);
+        }
+
+        // Plain decimal ("-12.34"); exponents and grouping separators are rejected
+        private static double parseAmount(ByteBuffer buffer, int start, int end) {
+            int i = start;
+            boolean negative = i < end && buffer.get(i) == '-';
+            if (negative)
+                i++;
+            long mantissa = 0;
+            int scale = 0;
+            boolean fraction = false;
+            boolean digits = false;
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b >= '0' && b <= '9' && mantissa < Long.MAX_VALUE / 10) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits = true;
+                    if (fraction)
+                        scale++;
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    throw new NumberFormatException("Invalid amount: " + text(buffer, start, end));
+                }
+            }
+            if (!digits) {
+                throw new NumberFormatException("Invalid amount: " + text(buffer, start, end));
+            }
+            double value = scale < POWERS_OF_TEN.length ? mantissa / POWERS_OF_TEN[scale] : mantissa / Math.pow(10, scale);
+            return negative ? -value : value;
+        }
+
+        private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+        private static int indexOf(ByteBuffer buffer, char c, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == c)
+                    return i;
+            }
+            return -1;
+        }
+
+        private static String text(ByteBuffer buffer, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Open-addressing dictionary keyed directly by byte ranges of a buffer
+    private static class ByteDictionary {
+        private final List<byte[]> values = new ArrayList<>();
+        private int[] hashes = new int[0];
+        private int[] slots = new int[64];
+
+        ByteDictionary() {
+            Arrays.fill(slots, -1);
+        }
+
+        int encode(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int code = slots[slot];
+                if (code < 0) {
+                    return insert(slot, hash, buffer, start, end);
+                }
+                if (hashes[code] == hash && matches(values.get(code), buffer, start, end)) {
+                    return code;
+                }
+            }
+        }
+
+        int size() { return values.size(); }
+
+        String decode(int code) { return new String(values.get(code), StandardCharsets.UTF_8); }
+
+        // Local code -> code in the target dictionary
+        int[] remap(StringDictionary target) {
+            int[] mapping = new int[values.size()];
+            for (int code = 0; code < mapping.length; code++) {
+                mapping[code] = target.encode(decode(code));
+            }
+            return mapping;
+        }
+
+        private int insert(int slot, int hash, ByteBuffer buffer, int start, int end) {
+            int code = values.size();
+            byte[] value = new byte[end - start];
+            buffer.get(start, value);
+            values.add(value);
+            if (code == hashes.length) {
+                hashes = Arrays.copyOf(hashes, Math.max(16, code * 2));
+            }
+            hashes[code] = hash;
+            slots[slot] = code;
+            if (values.size() * 2 > slots.length) {
+                rehash();
+            }
+            return code;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            Arrays.fill(slots, -1);
+            int mask = slots.length - 1;
+            for (int code = 0; code < values.size(); code++) {
+                int slot = mix(hashes[code]) & mask;
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = code;
+            }
+        }
+
+        private static boolean matches(byte[] value, ByteBuffer buffer, int start, int end) {
+            if (value.length != end - start)
+                return false;
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] != buffer.get(start + i))
+                    return false;
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    // Live per-category stats over a tumbling or sliding time window.
+    // Time is cut into buckets of one slide each; a ring holds the buckets of the current window.
+    // Recording touches a single bucket (striped adders, no locks), expired buckets are simply
+    // replaced when their ring slot is reused, and a snapshot sums at most size/slide buckets.
+    static class WindowedSalesAggregator {
+        private final Clock clock;
+        private final long bucketMillis;
+        private final AtomicReferenceArray<Bucket> ring;
+        private final LongAdder lateSales = new LongAdder();
+        // Newest bucket epoch recorded so far; anything a full ring behind it has left every window
+        private final AtomicLong newestEpoch = new AtomicLong(Long.MIN_VALUE);
+
+        private WindowedSalesAggregator(Duration size, Duration slide, Clock clock) {
+            long sizeMillis = size.toMillis();
+            long slideMillis = slide.toMillis();
+            if (slideMillis <= 0 || sizeMillis < slideMillis || sizeMillis % slideMillis != 0) {
+                throw new IllegalArgumentException("Window size must be a positive multiple of the slide");
+            }
+            this.clock = clock;
+            this.bucketMillis = slideMillis;
+            this.ring = new AtomicReferenceArray<>((int) (sizeMillis / slideMillis));
+        }
+
+        // Fixed, non-overlapping windows: stats reset when a new window starts
+        public static WindowedSalesAggregator tumbling(Duration size, Clock clock) {
+            return new WindowedSalesAggregator(size, size, clock);
+        }
+
+        // Overlapping windows covering the last `size`, advancing every `slide`
+        public static WindowedSalesAggregator sliding(Duration size, Duration slide, Clock clock) {
+            return new WindowedSalesAggregator(size, slide, clock);
+        }
+
+        public void record(Sale sale) {
+            record(sale, clock.millis());
+        }
+
+        public void record(Sale sale, long timestampMillis) {
+            long epoch = Math.floorDiv(timestampMillis, bucketMillis);
+            int slot = (int) Math.floorMod(epoch, (long) ring.length());
+            newestEpoch.accumulateAndGet(epoch, Math::max);
+            while (true) {
+                // Checked against the newest epoch, not just the slot, which may be empty or stale
+                Bucket bucket = epoch <= newestEpoch.get() - ring.length() ? null : bucketFor(epoch, slot);
+                if (bucket == null) {
+                    lateSales.increment();
+                    return;
+                }
+                bucket.cells.computeIfAbsent(sale.category(), c -> new Cell()).add(sale.amount());
+                // A newer bucket may have retired this one while we added; the retry then reports
+                // the sale as late instead of leaving it in a bucket nobody reads
+                if (ring.get(slot) == bucket)
+                    return;
+            }
+        }
+
+        public Map<String, SalesStats> snapshot() {
+            return snapshot(clock.millis());
+        }
+
+        public Map<String, SalesStats> snapshot(long nowMillis) {
+            Map<String, Cell> totals = new LinkedHashMap<>();
+            forEachLiveBucket(nowMillis, bucket -> bucket.cells.forEach(
+                    (category, cell) -> totals.computeIfAbsent(category, c -> new Cell()).add(cell)
+            ));
+            Map<String, SalesStats> result = new LinkedHashMap<>();
+            totals.forEach((category, cell) -> result.put(category, cell.toStats(category)));
+            return result;
+        }
+
+        public SalesStats snapshot(String category, long nowMillis) {
+            Cell total = new Cell();
+            forEachLiveBucket(nowMillis, bucket -> {
+                Cell cell = bucket.cells.get(category);
+                if (cell != null)
+                    total.add(cell);
+            });
+            return total.toStats(category);
+        }
+
+        // Sales dropped because their window had already expired when they arrived
+        public long lateSales() { return lateSales.sum(); }
+
+        private void forEachLiveBucket(long nowMillis, Consumer<Bucket> action) {
+            long current = Math.floorDiv(nowMillis, bucketMillis);
+            for (int i = 0; i < ring.length(); i++) {
+                Bucket bucket = ring.get(i);
+                if (bucket != null && bucket.epoch <= current && bucket.epoch > current - ring.length()) {
+                    action.accept(bucket);
+                }
+            }
+        }
+
+        // Null if the slot already belongs to a newer bucket, i.e. the sale's window has expired
+        private Bucket bucketFor(long epoch, int slot) {
+            while (true) {
+                Bucket bucket = ring.get(slot);
+                if (bucket != null && bucket.epoch == epoch)
+                    return bucket;
+                if (bucket != null && bucket.epoch > epoch)
+                    return null;
+                Bucket fresh = new Bucket(epoch);
+                if (ring.compareAndSet(slot, bucket, fresh))
+                    return fresh;
+            }
+        }
+
+        private static class Bucket {
+            final long epoch;
+            final ConcurrentHashMap<String, Cell> cells = new ConcurrentHashMap<>();
+
+            Bucket(long epoch) {
+                this.epoch = epoch;
+            }
+        }
+
+        private static class Cell {
+            final DoubleAdder sum = new DoubleAdder();
+            final LongAdder count = new LongAdder();
+
+            void add(double amount) {
+                sum.add(amount);
+                count.increment();
+            }
+
+            void add(Cell other) {
+                sum.add(other.sum.sum());
+                count.add(other.count.sum());
+            }
+
+            SalesStats toStats(String category) {
+                double total = sum.sum();
+                long n = count.sum();
+                return new SalesStats(category, n > 0 ? total / n : 0, total, n);
+            }
+        }
+    }
+
+    // Mergeable quantile sketch (KLL). Level h holds items of weight 2^h; a full level is sorted and
+    // every other item (random offset) is promoted, so total weight always equals the item count.
+    // Rank error is about 1.65% at k = 200 with 99% confidence and shrinks roughly as 1/k.
+    // It retains at most about 3k doubles (~5 KB at k = 200) regardless of how many values were added.
+    static class QuantileSketch {
+        private final int k;
+        private final List<double[]> levels = new ArrayList<>();
+        private int[] sizes = new int[0];
+        private long count;
+
+        public QuantileSketch(int k) {
+            if (k < 8) {
+                throw new IllegalArgumentException("k must be at least 8");
+            }
+            this.k = k;
+            addLevel();
+        }
+
+        public void add(double value) {
+            append(0, value);
+            count++;
+            compressIfNeeded();
+        }
+
+        public QuantileSketch merge(QuantileSketch other) {
+            while (levels.size() < other.levels.size()) {
+                addLevel();
+            }
+            for (int h = 0; h < other.levels.size(); h++) {
+                double[] items = other.levels.get(h);
+                for (int i = 0; i < other.sizes[h]; i++) {
+                    append(h, items[i]);
+                }
+            }
+            count += other.count;
+            compressIfNeeded();
+            return this;
+        }
+
+        public long count() { return count; }
+
+        // Value whose rank is approximately q * count(); NaN if empty
+        public double quantile(double q) {
+            if (q < 0 || q > 1) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1");
+            }
+            if (count == 0)
+                return Double.NaN;
+            int retained = retained();
+            double[] values = new double[retained];
+            long[] weights = new long[retained];
+            int n = 0;
+            for (int h = 0; h < levels.size(); h++) {
+                double[] items = levels.get(h);
+                for (int i = 0; i < sizes[h]; i++) {
+                    values[n] = items[i];
+                    weights[n++] = 1L << h;
+                }
+            }
+            Integer[] order = new Integer[retained];
+            for (int i = 0; i < retained; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+            long target = Math.max(1, (long) Math.ceil(q * count));
+            long cumulative = 0;
+            for (int i : order) {
+                cumulative += weights[i];
+                if (cumulative >= target)
+                    return values[i];
+            }
+            return values[order[retained - 1]];
+        }
+
+        // Number of values currently held, a proxy for memory use
+        public int retained() {
+            int total = 0;
+            for (int size : sizes) {
+                total += size;
+            }
+            return total;
+        }
+
+        private int capacity(int level) {
+            int depth = levels.size() - 1 - level;
+            return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+        }
+
+        private int maxRetained() {
+            int total = 0;
+            for (int h = 0; h < levels.size(); h++) {
+                total += capacity(h);
+            }
+            return total;
+        }
+
+        private void compressIfNeeded() {
+            while (retained() > maxRetained()) {
+                for (int h = 0; h < levels.size(); h++) {
+                    if (sizes[h] >= capacity(h)) {
+                        compact(h);
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void compact(int level) {
+            if (level + 1 == levels.size()) {
+                addLevel();
+            }
+            double[] items = levels.get(level);
+            int size = sizes[level];
+            Arrays.sort(items, 0, size);
+            // An odd item out stays behind so no weight is lost
+            int kept = size % 2;
+            int offset = kept + (ThreadLocalRandom.current().nextBoolean() ? 1 : 0);
+            for (int i = offset; i < size; i += 2) {
+                append(level + 1, items[i]);
+            }
+            sizes[level] = kept;
+        }
+
+        private void append(int level, double value) {
+            double[] items = levels.get(level);
+            if (sizes[level] == items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+                levels.set(level, items);
+            }
+            items[sizes[level]++] = value;
+        }
+
+        private void addLevel() {
+            levels.add(new double[Math.max(4, k / 4)]);
+            sizes = Arrays.copyOf(sizes, levels.size());
+        }
+    }
+
+    record HeavyHitter(String item, long count, long error) {
+        // True frequency lies in [count - error, count]
+        public long lowerBound() { return count - error; }
+    }
+
+    // Space-Saving heavy hitters with a fixed number of counters m. Every item occurring more than
+    // n/m times is tracked, and each reported count overestimates the truth by at most n/m
+    // (the per-item error field gives a tighter bound). Memory is m entries; evictions scan them.
+    static class SpaceSaving {
+        private final int capacity;
+        private final Map<String, long[]> counters = new HashMap<>(); // item -> {count, error}
+        private long total;
+
+        public SpaceSaving(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacity = capacity;
+        }
+
+        public void add(String item) {
+            total++;
+            long[] counter = counters.get(item);
+            if (counter != null) {
+                counter[0]++;
+            } else if (counters.size() < capacity) {
+                counters.put(item, new long[]{1, 0});
+            } else {
+                String evicted = null;
+                long min = Long.MAX_VALUE;
+                for (var entry : counters.entrySet()) {
+                    if (entry.getValue()[0] < min) {
+                        min = entry.getValue()[0];
+                        evicted = entry.getKey();
+                    }
+                }
+                counters.remove(evicted);
+                counters.put(item, new long[]{min + 1, min});
+            }
+        }
+
+        // Items missing from a full summary may have occurred up to its minimum count times
+        public SpaceSaving merge(SpaceSaving other) {
+            long thisMin = minCount();
+            long otherMin = other.minCount();
+            Map<String, long[]> merged = new HashMap<>();
+            counters.forEach((item, c) -> merged.put(item, new long[]{c[0] + otherMin, c[1] + otherMin}));
+            other.counters.forEach((item, c) -> {
+                long[] existing = merged.get(item);
+                if (existing != null) {
+                    existing[0] += c[0] - otherMin;
+                    existing[1] += c[1] - otherMin;
+                } else {
+                    merged.put(item, new long[]{c[0] + thisMin, c[1] + thisMin});
+                }
+            });
+            counters.clear();
+            merged.entrySet().stream()
+                    .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                    .limit(capacity)
+                    .forEach(entry -> counters.put(entry.getKey(), entry.getValue()));
+            total += other.total;
+            return this;
+        }
+
+        public List<HeavyHitter> top(int n) {
+            return counters.entrySet().stream()
+                    .map(entry -> new HeavyHitter(entry.getKey(), entry.getValue()[0], entry.getValue()[1]))
+                    .sorted(Comparator.comparingLong(HeavyHitter::count).reversed())
+                    .limit(n)
+                    .toList();
+        }
+
+        public long total() { return total; }
+
+        private long minCount() {
+            if (counters.size() < capacity)
+                return 0;
+            return counters.values().stream().mapToLong(c -> c[0]).min().orElse(0);
+        }
+    }
+
+    // Sketch of sale amounts; partial sketches from parallel partitions are merged
+    static Collector<Sale, QuantileSketch, QuantileSketch> amountQuantiles(int k) {
+        return Collector.of(
+                () -> new QuantileSketch(k),
+                (sketch, sale) -> sketch.add(sale.amount()),
+                QuantileSketch::merge
+        );
+    }
+
+    // Most frequently sold products using the given number of Space-Saving counters
+    static Collector<Sale, SpaceSaving, SpaceSaving> topProducts(int counters) {
+        return Collector.of(
+                () -> new SpaceSaving(counters),
+                (summary, sale) -> summary.add(sale.product()),
+                SpaceSaving::merge
+        );
+    }
+
+    // Materialized rollup of sales by category and by category x product. Aggregates are updated
+    // as sales are added or removed, so stats queries are single hash lookups instead of scans.
+    static class SalesRollup {
+        private record Totals(double sum, long count) {
+            Totals plus(Totals other) {
+                return new Totals(sum + other.sum, count + other.count);
+            }
+
+            SalesStats toStats(String category) {
+                return new SalesStats(category, count > 0 ? sum / count : 0, sum, count);
+            }
+        }
+
+        private record CategoryProduct(String category, String product) {}
+
+        private final Map<String, Totals> byCategory = new ConcurrentHashMap<>();
+        private final Map<CategoryProduct, Totals> byCategoryProduct = new ConcurrentHashMap<>();
+        // How often each distinct sale was added, so only sales that are actually held can be removed
+        private final Map<Sale, Long> added = new ConcurrentHashMap<>();
+
+        public static SalesRollup of(List<Sale> sales) {
+            SalesRollup rollup = new SalesRollup();
+            sales.forEach(rollup::add);
+            return rollup;
+        }
+
+        public void add(Sale sale) {
+            added.merge(sale, 1L, Long::sum);
+            apply(sale, new Totals(sale.amount(), 1));
+        }
+
+        // Retracts a previously added sale, e.g. a refund or correction. Returns false, changing
+        // nothing, for a sale that was never added (or was added with different fields).
+        public boolean remove(Sale sale) {
+            boolean[] held = {false};
+            added.computeIfPresent(sale, (key, count) -> {
+                held[0] = true;
+                return count > 1 ? count - 1 : null;
+            });
+            if (held[0])
+                apply(sale, new Totals(-sale.amount(), -1));
+            return held[0];
+        }
+
+        public SalesStats statsFor(String category) {
+            return byCategory.getOrDefault(category, new Totals(0, 0)).toStats(category);
+        }
+
+        public SalesStats statsFor(String category, String product) {
+            return byCategoryProduct.getOrDefault(new CategoryProduct(category, product), new Totals(0, 0))
+                    .toStats(category);
+        }
+
+        public Map<String, SalesStats> allCategories() {
+            Map<String, SalesStats> result = new LinkedHashMap<>();
+            byCategory.forEach((category, totals) -> result.put(category, totals.toStats(category)));
+            return result;
+        }
+
+        private void apply(Sale sale, Totals delta) {
+            // Entries whose count drops to zero are removed rather than kept as empty totals
+            byCategory.compute(sale.category(), (key, totals) -> nonEmpty(totals == null ? delta : totals.plus(delta)));
+            byCategoryProduct.compute(
+                    new CategoryProduct(sale.category(), sale.product()),
+                    (key, totals) -> nonEmpty(totals == null ? delta : totals.plus(delta))
+            );
+        }
+
+        private static Totals nonEmpty(Totals totals) {
+            return totals.count() > 0 ? totals : null;
+        }
+    }
+
     static List<Sale> getSalesByCategory(List<Sale> sales, String category) {
         return sales.stream()
                 .filter(sale -> sale.category().equals(category))
@@ -53,7 +1022,197 @@ public class SalesAnalyticsExercise {
                 );
     }
 
-    public static void main(String[] args) {
+    static SalesStats toStats(String category, DoubleSummaryStatistics summary) {
+        return new SalesStats(category, summary.getAverage(), summary.getSum(), summary.getCount());
+    }
+
+    // Stats for every category in a single pass, in first-seen category order
+    static Map<String, SalesStats> calculateAllStats(List<Sale> sales) {
+        return aggregate(sales.stream());
+    }
+
+    // Parallel variant: each partition builds its own map, partial maps are merged once per category
+    static Map<String, SalesStats> calculateAllStatsParallel(List<Sale> sales) {
+        return aggregate(sales.parallelStream());
+    }
+
+    private static Map<String, SalesStats> aggregate(Stream<Sale> sales) {
+        Map<String, DoubleSummaryStatistics> summaries = sales.collect(
+                Collectors.groupingBy(
+                        Sale::category,
+                        LinkedHashMap::new,
+                        Collectors.summarizingDouble(Sale::amount)
+                )
+        );
+        Map<String, SalesStats> result = new LinkedHashMap<>();
+        summaries.forEach((category, summary) -> result.put(category, toStats(category, summary)));
+        return result;
+    }
+
+    // Compares the per-category rescans against the single-pass aggregation
+    static void benchmark(int numberOfSales, int numberOfCategories) {
+        Random random = new Random(42);
+        List<Sale> sales = new ArrayList<>(numberOfSales);
+        for (int i = 0; i < numberOfSales; i++) {
+            sales.add(new Sale(
+                    "Product " + random.nextInt(1_000),
+                    random.nextInt(100_000) / 100.0,
+                    "Category " + random.nextInt(numberOfCategories)
+            ));
+        }
+
+        Function<List<Sale>, Map<String, SalesStats>> perCategory = list -> {
+            Map<String, SalesStats> result = new LinkedHashMap<>();
+            list.stream().map(Sale::category).distinct().forEach(category -> {
+                getSalesByCategory(list, category);
+                result.put(category, calculateStats(list, category));
+            });
+            return result;
+        };
+
+        System.out.printf("%nBenchmark (%,d sales, %d categories):%n", numberOfSales, numberOfCategories);
+        time("Per-category rescans", perCategory, sales);
+        time("Single pass", SalesAnalyticsExercise::calculateAllStats, sales);
+        time("Single pass (parallel)", SalesAnalyticsExercise::calculateAllStatsParallel, sales);
+        SalesTable table = SalesTable.from(sales);
+        time("Columnar table", list -> table.statsByCategory(), sales);
+    }
+
+    private static void time(String label, Function<List<Sale>, Map<String, SalesStats>> aggregation, List<Sale> sales) {
+        // Warm up before measuring
+        for (int i = 0; i < 3; i++) {
+            aggregation.apply(sales);
+        }
+        int runs = 5;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            aggregation.apply(sales);
+        }
+        System.out.printf("%-24s %8.2f ms/run%n", label, (System.nanoTime() - start) / 1e6 / runs);
+    }
+
+    // Writes synthetic sales to a temporary CSV file and ingests it
+    static void ingestDemo(int numberOfSales) throws IOException {
+        Path file = Files.createTempFile("sales", ".csv");
+        try {
+            Random random = new Random(7);
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write("product,amount,category\n");
+                for (int i = 0; i < numberOfSales; i++) {
+                    writer.write("Product %d,%d.%02d,Category %d%n".formatted(
+                            random.nextInt(1_000), random.nextInt(1_000), random.nextInt(100), random.nextInt(20)
+                    ));
+                }
+            }
+
+            SalesCsvReader reader = new SalesCsvReader(true);
+            System.out.println("\nCSV ingestion:");
+            IngestResult<SalesTable> loaded = reader.load(file);
+            System.out.println("Columnar load: " + loaded);
+            IngestResult<Map<String, SalesStats>> aggregated = reader.aggregate(file);
+            System.out.println("Aggregation:   " + aggregated);
+            System.out.println(aggregated.value().get("Category 0"));
+            System.out.println(loaded.value().statsFor("Category 0"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Feeds timestamped sales from several threads into a sliding window
+    static void windowDemo() throws InterruptedException {
+        WindowedSalesAggregator window = WindowedSalesAggregator.sliding(
+                Duration.ofMinutes(5), Duration.ofMinutes(1), Clock.systemUTC()
+        );
+        long minute = Duration.ofMinutes(1).toMillis();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                // One sale per category per minute, for minutes 5..9
+                for (int m = 5; m < 10; m++) {
+                    window.record(new Sale("Laptop", 1000, "Electronics"), m * minute);
+                    window.record(new Sale("Book", 20, "Books"), m * minute);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        window.record(new Sale("Novel", 25, "Books"), 0);
+
+        System.out.println("\nSliding 5 minute window at minute 9:");
+        window.snapshot(9 * minute + 1).values().forEach(System.out::println);
+        System.out.println("Late sales dropped: " + window.lateSales());
+    }
+
+    // Approximate percentiles and top products per category over a large parallel stream
+    static void sketchDemo(int numberOfSales) {
+        Random random = new Random(11);
+        List<Sale> sales = new ArrayList<>(numberOfSales);
+        for (int i = 0; i < numberOfSales; i++) {
+            // Skewed product popularity so there are real heavy hitters
+            int product = (int) Math.floor(Math.pow(random.nextDouble(), 3) * 500);
+            sales.add(new Sale("Product " + product, Math.exp(random.nextGaussian() + 4), "Category " + (i % 3)));
+        }
+
+        Map<String, QuantileSketch> quantiles = sales.parallelStream()
+                .collect(Collectors.groupingBy(Sale::category, amountQuantiles(200)));
+        Map<String, SpaceSaving> topProducts = sales.parallelStream()
+                .collect(Collectors.groupingBy(Sale::category, topProducts(100)));
+
+        System.out.printf("%nSketches over %,d sales:%n", numberOfSales);
+        quantiles.forEach((category, sketch) -> System.out.printf(
+                "%s: p50=$%.2f p95=$%.2f p99=$%.2f (%d values retained), top: %s%n",
+                category, sketch.quantile(0.5), sketch.quantile(0.95), sketch.quantile(0.99), sketch.retained(),
+                topProducts.get(category).top(3)
+        ));
+
+        double[] exact = sales.stream()
+                .filter(sale -> sale.category().equals("Category 0"))
+                .mapToDouble(Sale::amount)
+                .sorted()
+                .toArray();
+        System.out.printf("Category 0 exact: p50=$%.2f p95=$%.2f p99=$%.2f%n",
+                exact[(int) Math.ceil(0.5 * exact.length) - 1],
+                exact[(int) Math.ceil(0.95 * exact.length) - 1],
+                exact[(int) Math.ceil(0.99 * exact.length) - 1]);
+    }
+
+    // Query latency of the rollup against scanning the raw sales
+    static void rollupDemo(int numberOfSales) {
+        Random random = new Random(3);
+        List<Sale> sales = new ArrayList<>(numberOfSales);
+        for (int i = 0; i < numberOfSales; i++) {
+            sales.add(new Sale("Product " + random.nextInt(100), random.nextInt(10_000) / 100.0, "Category " + random.nextInt(20)));
+        }
+        SalesRollup rollup = SalesRollup.of(sales);
+        Sale refund = sales.get(0);
+        rollup.remove(refund);
+        rollup.add(refund);
+
+        System.out.printf("%nRollup over %,d sales:%n", numberOfSales);
+        System.out.println("Raw scan: " + calculateStats(sales, "Category 7"));
+        System.out.println("Rollup:   " + rollup.statsFor("Category 7"));
+        System.out.println("Unknown sale removed: " + rollup.remove(new Sale("Product 1", -1, "Category 7")));
+        System.out.println("Product:  " + rollup.statsFor("Category 7", "Product 42"));
+
+        int queries = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            calculateStats(sales, "Category " + (i % 20));
+        }
+        double scanMicros = (System.nanoTime() - start) / 1e3 / queries;
+        queries = 1_000_000;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            rollup.statsFor("Category " + (i % 20));
+        }
+        double rollupMicros = (System.nanoTime() - start) / 1e3 / queries;
+        System.out.printf("Query latency: raw scan %.1f us, rollup %.3f us%n", scanMicros, rollupMicros);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
         List<Sale> sales = List.of(
                 new Sale("Laptop", 999.99, "Electronics"),
                 new Sale("Headphones", 99.99, "Electronics"),
@@ -63,26 +1222,27 @@ public class SalesAnalyticsExercise {
                 new Sale("Novel", 24.99, "Books")
         );
 
-        // Get unique categories using toList()
-        List<String> categories = sales.stream()
-                .map(Sale::category)
-                .distinct()
-                .toList();
-
         System.out.println("Sales Analysis by Category:");
         System.out.println("--------------------------");
 
-        // Calculate and print stats for each category
-        categories.forEach(category -> {
+        // Stats for all categories in one pass over the sales
+        calculateAllStats(sales).forEach((category, stats) -> {
             System.out.println("\nCategory: " + category);
-
-            // Demonstrate getSalesByCategory
-            List<Sale> categorySales = getSalesByCategory(sales, category);
-            System.out.println("Number of products: " + categorySales.size());
-
-            // Demonstrate calculateStats with teeing collector
-            SalesStats stats = calculateStats(sales, category);
+            System.out.println("Number of products: " + stats.numberOfSales);
             System.out.println(stats);
         });
+
+        // Same data in the columnar store
+        SalesTable table = SalesTable.from(sales);
+        System.out.println("\nColumnar table (" + table.size() + " rows):");
+        System.out.println(table.statsFor("Electronics"));
+        System.out.println("Books rows: " + table.whereCategory("Books").toList());
+        System.out.println("Round trip equal: " + table.toList().equals(sales));
+
+        benchmark(200_000, 20);
+        ingestDemo(2_000_000);
+        windowDemo();
+        sketchDemo(1_000_000);
+        rollupDemo(200_000);
     }
 }
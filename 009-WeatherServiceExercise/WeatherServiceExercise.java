@@ -1,9 +1,49 @@
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.Timespan;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 public class WeatherServiceExercise {
 
@@ -17,9 +57,23 @@ public class WeatherServiceExercise {
 
     static class WeatherClient {
         private final HttpClient client;
+        private final String baseUrl;
+        private final WeatherClientMetrics metrics;
         private static final String API_BASE_URL = "https://api.open-meteo.com/v1/forecast";
 
         public WeatherClient() {
+            this(API_BASE_URL);
+        }
+
+        // Points the client at another endpoint, e.g. a local stub server
+        public WeatherClient(String baseUrl) {
+            this(baseUrl, null);
+        }
+
+        // metrics may be null, in which case requests are not instrumented at all
+        public WeatherClient(String baseUrl, WeatherClientMetrics metrics) {
+            this.baseUrl = baseUrl;
+            this.metrics = metrics;
             this.client = HttpClient.newBuilder()
                     .version(HttpClient.Version.HTTP_2)
                     .connectTimeout(Duration.ofSeconds(10))
@@ -28,66 +82,1293 @@ public class WeatherServiceExercise {
         }
 
         public WeatherData getWeather(String location, double latitude, double longitude) throws Exception {
-            System.out.println("getWeather");
+            HttpRequest request = buildRequest(latitude, longitude);
+
+            HttpResponse<String> response = send(
+                    request,
+                    HttpResponse.BodyHandlers.ofString()
+            );
+
+            return toWeatherData(location, response);
+        }
 
+        public CompletableFuture<WeatherData> getWeatherAsync(String location, double latitude, double longitude) {
+            HttpRequest request = buildRequest(latitude, longitude);
+
+            return sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .thenApply(response -> toWeatherData(location, response));
+        }
+
+        // Typed current weather decoded while the body streams in; keepRawBody also returns the JSON text
+        public WeatherReport getCurrentWeather(String location, double latitude, double longitude,
+                                               boolean keepRawBody) throws Exception {
+            HttpResponse<WeatherReport> response = send(
+                    buildRequest(latitude, longitude),
+                    new CurrentWeatherBodyHandler(location, keepRawBody)
+            );
+            if (response.statusCode() != 200) {
+                throw new WeatherApiException(response.statusCode());
+            }
+            return response.body();
+        }
+
+        public CompletableFuture<WeatherReport> getCurrentWeatherAsync(String location, double latitude,
+                                                                       double longitude, boolean keepRawBody) {
+            return sendAsync(buildRequest(latitude, longitude), new CurrentWeatherBodyHandler(location, keepRawBody))
+                    .thenApply(response -> {
+                        if (response.statusCode() != 200) {
+                            throw new WeatherApiException(response.statusCode());
+                        }
+                        return response.body();
+                    });
+        }
+
+        // Fetches all locations on virtual threads, at most maxConcurrency requests in flight and
+        // paced by rateLimit (may be null). Results are handed to onResult as they complete, in
+        // completion order; this call returns once every location has been reported.
+        public void getWeatherBatch(Collection<Location> locations, int maxConcurrency, TokenBucket rateLimit,
+                                    Consumer<BatchResult> onResult) throws InterruptedException {
+            if (maxConcurrency <= 0) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+            Semaphore permits = new Semaphore(maxConcurrency);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Location location : locations) {
+                    permits.acquire();
+                    if (rateLimit != null) {
+                        rateLimit.acquire();
+                    }
+                    // execute, not submit: an exception from onResult then reaches the uncaught
+                    // exception handler instead of vanishing into an ignored Future
+                    executor.execute(() -> {
+                        long start = System.nanoTime();
+                        BatchResult result;
+                        try {
+                            HttpResponse<String> response = send(
+                                    buildRequest(location.latitude(), location.longitude()),
+                                    HttpResponse.BodyHandlers.ofString()
+                            );
+                            result = new BatchResult(
+                                    location, toWeatherData(location.name(), response), null, System.nanoTime() - start
+                            );
+                        } catch (Exception e) {
+                            result = new BatchResult(location, null, e, System.nanoTime() - start);
+                        } finally {
+                            permits.release();
+                        }
+                        // Outside the try, so a throwing callback is not reported again as a failed fetch
+                        onResult.accept(result);
+                    });
+                }
+            }
+        }
+
+        // Blocking variant collecting the results, in completion order
+        public List<BatchResult> getWeatherBatch(Collection<Location> locations) throws InterruptedException {
+            List<BatchResult> results = Collections.synchronizedList(new ArrayList<>(locations.size()));
+            getWeatherBatch(locations, 64, null, results::add);
+            return results;
+        }
+
+        private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+                throws IOException, InterruptedException {
+            if (metrics == null)
+                return client.send(request, handler);
+            WeatherClientMetrics.RequestTimer timer = metrics.start(request);
+            try {
+                HttpResponse<T> response = client.send(request, timer.wrap(handler));
+                timer.finish(response, null);
+                return response;
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                timer.finish(null, e);
+                throw e;
+            }
+        }
+
+        private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+            if (metrics == null)
+                return client.sendAsync(request, handler);
+            WeatherClientMetrics.RequestTimer timer = metrics.start(request);
+            return client.sendAsync(request, timer.wrap(handler)).whenComplete(timer::finish);
+        }
+
+        private HttpRequest buildRequest(double latitude, double longitude) {
             String url = String.format(
                     "%s?latitude=%.4f&longitude=%.4f&current_weather=true",
-                    API_BASE_URL,
+                    baseUrl,
                     latitude,
                     longitude
             );
 
-            HttpRequest request = HttpRequest.newBuilder()
+            return HttpRequest.newBuilder()
                     .uri(URI.create(url))
                     .header("Accept", "application/json")
                     .timeout(Duration.ofSeconds(30))
                     .GET()
                     .build();
+        }
 
-            System.out.println("Request: " + request);
-            HttpResponse<String> response = client.send(
-                    request,
-                    HttpResponse.BodyHandlers.ofString()
+        private static WeatherData toWeatherData(String location, HttpResponse<String> response) {
+            if (response.statusCode() != 200) {
+                throw new WeatherApiException(response.statusCode());
+            }
+            return new WeatherData(location, response.body());
+        }
+    }
+
+    // Emitted per HTTP request when a JFR recording enables it; the event duration is the total time
+    @Name("weather.HttpRequest")
+    @Label("Weather HTTP Request")
+    @Category("Weather Client")
+    static class WeatherRequestEvent extends Event {
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("Status Code")
+        int statusCode;
+
+        @Label("Time to First Byte")
+        @Timespan(Timespan.NANOSECONDS)
+        long timeToFirstByte;
+
+        @Label("Error")
+        String error;
+    }
+
+    // Lock-free latency histogram with power-of-two nanosecond buckets
+    static class LatencyHistogram {
+        private static final int BUCKETS = 64;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = counts.get(i);
+            }
+            return new HistogramSnapshot(buckets, count.sum(), totalNanos.sum());
+        }
+    }
+
+    record HistogramSnapshot(long[] buckets, long count, long totalNanos) {
+        public double meanMillis() { return count == 0 ? 0 : totalNanos / 1e6 / count; }
+
+        // Upper bound of the bucket holding the given quantile
+        public double percentileMillis(double quantile) {
+            long target = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0)
+                    return (1L << Math.min(i, 62)) / 1e6;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "n=%d mean=%.2fms p50<%.2fms p99<%.2fms".formatted(
+                    count, meanMillis(), percentileMillis(0.5), percentileMillis(0.99)
             );
-            System.out.println("Response code: " + response.statusCode());
+        }
+    }
 
-            if (response.statusCode() != 200) {
-                throw new RuntimeException(
-                        "API error: " + response.statusCode()
-                );
+    record EndpointSnapshot(HistogramSnapshot timeToFirstByte, HistogramSnapshot total, int inFlight,
+                            Map<Integer, Long> responsesByStatus, long transportErrors) {}
+
+    // Per-endpoint request metrics for WeatherClient. java.net.http does not expose connection
+    // setup separately, so time to first byte (response headers) includes connecting.
+    static class WeatherClientMetrics {
+        private static class EndpointMetrics {
+            final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+            final LatencyHistogram total = new LatencyHistogram();
+            final AtomicInteger inFlight = new AtomicInteger();
+            final Map<Integer, LongAdder> responsesByStatus = new ConcurrentHashMap<>();
+            final LongAdder transportErrors = new LongAdder();
+        }
+
+        private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+        // Pollable, point-in-time view keyed by host and path
+        public Map<String, EndpointSnapshot> snapshot() {
+            Map<String, EndpointSnapshot> result = new TreeMap<>();
+            endpoints.forEach((endpoint, m) -> {
+                Map<Integer, Long> statuses = new TreeMap<>();
+                m.responsesByStatus.forEach((status, count) -> statuses.put(status, count.sum()));
+                result.put(endpoint, new EndpointSnapshot(
+                        m.timeToFirstByte.snapshot(), m.total.snapshot(), m.inFlight.get(), statuses, m.transportErrors.sum()
+                ));
+            });
+            return result;
+        }
+
+        RequestTimer start(HttpRequest request) {
+            String endpoint = request.uri().getHost() + request.uri().getPath();
+            EndpointMetrics m = endpoints.computeIfAbsent(endpoint, e -> new EndpointMetrics());
+            m.inFlight.incrementAndGet();
+            return new RequestTimer(endpoint, m);
+        }
+
+        static class RequestTimer {
+            private final String endpoint;
+            private final EndpointMetrics metrics;
+            private final WeatherRequestEvent event = new WeatherRequestEvent();
+            private final long start = System.nanoTime();
+            private volatile long firstByteAt;
+
+            private RequestTimer(String endpoint, EndpointMetrics metrics) {
+                this.endpoint = endpoint;
+                this.metrics = metrics;
+                event.begin();
             }
 
-            return new WeatherData(location, response.body());
+            // Notes when the response headers arrive
+            <T> HttpResponse.BodyHandler<T> wrap(HttpResponse.BodyHandler<T> handler) {
+                return responseInfo -> {
+                    firstByteAt = System.nanoTime();
+                    return handler.apply(responseInfo);
+                };
+            }
+
+            void finish(HttpResponse<?> response, Throwable error) {
+                long end = System.nanoTime();
+                metrics.inFlight.decrementAndGet();
+                metrics.total.record(end - start);
+                if (firstByteAt != 0) {
+                    metrics.timeToFirstByte.record(firstByteAt - start);
+                }
+                if (response != null) {
+                    metrics.responsesByStatus.computeIfAbsent(response.statusCode(), s -> new LongAdder()).increment();
+                } else {
+                    metrics.transportErrors.increment();
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.endpoint = endpoint;
+                    event.statusCode = response != null ? response.statusCode() : -1;
+                    event.timeToFirstByte = firstByteAt != 0 ? firstByteAt - start : 0;
+                    event.error = error != null ? error.toString() : null;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    record Location(String name, double latitude, double longitude) {}
+
+    record CurrentWeather(String time, double temperature, double windSpeed, double windDirection,
+                          int weatherCode, boolean isDay) {}
+
+    // Decoded response; rawJson is only kept when asked for, otherwise null
+    record WeatherReport(String location, CurrentWeather current, String rawJson) {}
+
+    // Decodes the "current_weather" object straight from the response's ByteBuffer chunks.
+    // A small JSON state machine runs byte by byte, so tokens may span chunk boundaries;
+    // only the fields of interest are converted and no String of the whole body is built.
+    static class CurrentWeatherBodyHandler implements HttpResponse.BodyHandler<WeatherReport> {
+        private final String location;
+        private final boolean keepRawBody;
+
+        CurrentWeatherBodyHandler(String location, boolean keepRawBody) {
+            this.location = location;
+            this.keepRawBody = keepRawBody;
+        }
+
+        @Override
+        public HttpResponse.BodySubscriber<WeatherReport> apply(HttpResponse.ResponseInfo responseInfo) {
+            if (responseInfo.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            CurrentWeatherDecoder decoder = new CurrentWeatherDecoder(keepRawBody);
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.fromSubscriber(decoder, CurrentWeatherDecoder::finish),
+                    decoded -> decoded.toReport(location)
+            );
+        }
+    }
+
+    static class CurrentWeatherDecoder implements Flow.Subscriber<List<ByteBuffer>> {
+        private static final byte[] CURRENT_WEATHER = bytes("current_weather");
+        private static final byte[] TIME = bytes("time");
+        private static final byte[] TEMPERATURE = bytes("temperature");
+        private static final byte[] WIND_SPEED = bytes("windspeed");
+        private static final byte[] WIND_DIRECTION = bytes("winddirection");
+        private static final byte[] WEATHER_CODE = bytes("weathercode");
+        private static final byte[] IS_DAY = bytes("is_day");
+        private static final byte[] NULL = bytes("null");
+        private static final byte[] TRUE = bytes("true");
+        private static final byte[] FALSE = bytes("false");
+        private static final int MAX_DEPTH = 64;
+
+        private final ByteArrayOutputStream raw;
+        private final boolean[] objectAtDepth = new boolean[MAX_DEPTH];
+        private int depth;
+        private int currentWeatherDepth = -1;
+        private boolean expectingKey;
+        private boolean inString;
+        private boolean stringIsKey;
+        private boolean escape;
+        private boolean inScalar;
+        private byte[] token = new byte[64];
+        private int tokenLength;
+        private byte[] key = new byte[64];
+        private int keyLength;
+
+        private String time;
+        private double temperature = Double.NaN;
+        private double windSpeed = Double.NaN;
+        private double windDirection = Double.NaN;
+        private int weatherCode = -1;
+        private boolean isDay;
+        private boolean sawCurrentWeather;
+        private String invalidField;
+        private String malformed;
+
+        CurrentWeatherDecoder(boolean keepRawBody) {
+            this.raw = keepRawBody ? new ByteArrayOutputStream() : null;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                if (raw != null && buffer.hasArray()) {
+                    raw.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                }
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (raw != null && !buffer.hasArray())
+                        raw.write(b);
+                    accept(b);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // The HTTP client reports the failure through the response future
+        }
+
+        // Decoding problems never escape onNext/onComplete; they are kept and reported by toReport()
+        @Override
+        public void onComplete() {
+            if (inScalar)
+                endScalar();
+            if (depth != 0 && malformed == null)
+                malformed = "unexpected end of input";
+        }
+
+        CurrentWeatherDecoder finish() {
+            return this;
+        }
+
+        WeatherReport toReport(String location) {
+            if (malformed != null) {
+                throw new IllegalStateException("Malformed JSON: " + malformed);
+            }
+            if (!sawCurrentWeather) {
+                throw new IllegalStateException("Response has no current_weather object");
+            }
+            if (invalidField != null) {
+                throw new IllegalStateException("Invalid value for current_weather." + invalidField);
+            }
+            CurrentWeather current = new CurrentWeather(time, temperature, windSpeed, windDirection, weatherCode, isDay);
+            return new WeatherReport(location, current, raw == null ? null : raw.toString(StandardCharsets.UTF_8));
+        }
+
+        private void accept(byte b) {
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                    appendToken(b);
+                } else if (b == '\\') {
+                    escape = true;
+                } else if (b == '"') {
+                    inString = false;
+                    endString();
+                } else {
+                    appendToken(b);
+                }
+                return;
+            }
+            if (inScalar) {
+                if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                    endScalar();
+                } else {
+                    appendToken(b);
+                    return;
+                }
+            }
+            switch (b) {
+                case ' ', '\n', '\r', '\t' -> { }
+                case '"' -> {
+                    inString = true;
+                    stringIsKey = inObject() && expectingKey;
+                    tokenLength = 0;
+                }
+                case '{' -> {
+                    if (depth == 1 && matches(key, keyLength, CURRENT_WEATHER)) {
+                        currentWeatherDepth = depth + 1;
+                        sawCurrentWeather = true;
+                    }
+                    push(true);
+                    expectingKey = true;
+                }
+                case '[' -> push(false);
+                case '}', ']' -> {
+                    if (depth == 0) {
+                        if (malformed == null)
+                            malformed = "unbalanced '" + (char) b + "'";
+                        return;
+                    }
+                    if (depth == currentWeatherDepth)
+                        currentWeatherDepth = -1;
+                    depth--;
+                    expectingKey = false;
+                }
+                case ':' -> expectingKey = false;
+                case ',' -> expectingKey = inObject();
+                default -> {
+                    inScalar = true;
+                    tokenLength = 0;
+                    appendToken(b);
+                }
+            }
+        }
+
+        // Depth keeps counting past MAX_DEPTH; only the top levels are ever matched against, so
+        // deeper containers are just skipped over (their keys are read as plain strings)
+        private void push(boolean object) {
+            if (depth < MAX_DEPTH)
+                objectAtDepth[depth] = object;
+            depth++;
+        }
+
+        private boolean inObject() {
+            return depth > 0 && depth <= MAX_DEPTH && objectAtDepth[depth - 1];
+        }
+
+        private void endString() {
+            if (stringIsKey) {
+                byte[] swap = key;
+                key = token;
+                token = swap;
+                keyLength = tokenLength;
+            } else if (depth == currentWeatherDepth && matches(key, keyLength, TIME)) {
+                time = new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+            }
+        }
+
+        // Runs inside onNext, so nothing here may throw: a null leaves the field at its default,
+        // true/false count as 1/0, and anything else unparsable is reported by toReport()
+        private void endScalar() {
+            inScalar = false;
+            if (depth != currentWeatherDepth)
+                return;
+            boolean tracked = matches(key, keyLength, TEMPERATURE) || matches(key, keyLength, WIND_SPEED)
+                    || matches(key, keyLength, WIND_DIRECTION) || matches(key, keyLength, WEATHER_CODE)
+                    || matches(key, keyLength, IS_DAY);
+            if (!tracked || matches(token, tokenLength, NULL))
+                return;
+            double value = matches(token, tokenLength, TRUE) ? 1
+                    : matches(token, tokenLength, FALSE) ? 0
+                    : parseNumber(token, tokenLength);
+            if (Double.isNaN(value)) {
+                if (invalidField == null)
+                    invalidField = new String(key, 0, keyLength, StandardCharsets.UTF_8);
+                return;
+            }
+            if (matches(key, keyLength, TEMPERATURE)) {
+                temperature = value;
+            } else if (matches(key, keyLength, WIND_SPEED)) {
+                windSpeed = value;
+            } else if (matches(key, keyLength, WIND_DIRECTION)) {
+                windDirection = value;
+            } else if (matches(key, keyLength, WEATHER_CODE)) {
+                weatherCode = (int) value;
+            } else {
+                isDay = value != 0;
+            }
+        }
+
+        private void appendToken(byte b) {
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, token.length * 2);
+            }
+            token[tokenLength++] = b;
+        }
+
+        // JSON number from ASCII bytes, or NaN if malformed. Digits accumulate into an integer
+        // mantissa and are scaled by one exact power of ten, so the result is correctly rounded
+        // (as in SalesCsvReader); mantissas beyond 2^53 or large exponents use Double.parseDouble.
+        private static double parseNumber(byte[] bytes, int length) {
+            int i = 0;
+            boolean negative = length > 0 && bytes[0] == '-';
+            if (negative)
+                i++;
+            long mantissa = 0;
+            int scale = 0;
+            int digits = 0;
+            boolean exact = true;
+            for (; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++, digits++) {
+                exact &= mantissa < Long.MAX_VALUE / 10;
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+            }
+            if (i < length && bytes[i] == '.') {
+                int fractionStart = ++i;
+                for (; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++, digits++, scale++) {
+                    exact &= mantissa < Long.MAX_VALUE / 10;
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                }
+                if (i == fractionStart)
+                    return Double.NaN;
+            }
+            if (digits == 0)
+                return Double.NaN;
+            if (i < length && (bytes[i] == 'e' || bytes[i] == 'E')) {
+                i++;
+                boolean negativeExponent = i < length && bytes[i] == '-';
+                if (i < length && (bytes[i] == '-' || bytes[i] == '+'))
+                    i++;
+                int exponentStart = i;
+                int exponent = 0;
+                for (; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                    exponent = Math.min(exponent * 10 + (bytes[i] - '0'), 100_000);
+                }
+                if (i == exponentStart)
+                    return Double.NaN;
+                scale -= negativeExponent ? -exponent : exponent;
+            }
+            if (i != length)
+                return Double.NaN;
+            if (!exact || mantissa >= 1L << 53 || Math.abs(scale) >= POWERS_OF_TEN.length) {
+                return Double.parseDouble(new String(bytes, 0, length, StandardCharsets.US_ASCII));
+            }
+            double value = scale >= 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa * POWERS_OF_TEN[-scale];
+            return negative ? -value : value;
+        }
+
+        private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+                1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+        private static boolean matches(byte[] bytes, int length, byte[] expected) {
+            return length == expected.length && Arrays.equals(bytes, 0, length, expected, 0, length);
+        }
+
+        private static byte[] bytes(String s) {
+            return s.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // Outcome of one location in a batch: either data or error is set
+    record BatchResult(Location location, WeatherData data, Throwable error, long latencyNanos) {
+        public boolean isSuccess() { return error == null; }
+    }
+
+    // Token bucket rate limiter: refills ratePerSecond tokens per second up to burst tokens
+    static class TokenBucket {
+        private final double tokensPerNano;
+        private final double burst;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        public TokenBucket(double ratePerSecond, int burst) {
+            if (ratePerSecond <= 0 || burst <= 0) {
+                throw new IllegalArgumentException("Rate and burst must be positive");
+            }
+            this.tokensPerNano = ratePerSecond / 1e9;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        public void acquire() throws InterruptedException {
+            long waitNanos = reserve();
+            if (waitNanos > 0) {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            }
+        }
+
+        // Takes a token (possibly going into debt) and returns how long the caller must wait for it
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+    }
+
+    // Thrown for non-200 responses so callers can tell server errors from client errors
+    static class WeatherApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        WeatherApiException(int statusCode) {
+            super("API error: " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int statusCode() { return statusCode; }
+
+        public boolean isServerError() { return statusCode >= 500 && statusCode < 600; }
+    }
+
+    static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException() {
+            super("Circuit open: upstream marked unhealthy");
+        }
+    }
+
+    record ResiliencePolicy(
+            double hedgePercentile,      // hedge once a call is slower than this share of recent calls
+            Duration initialHedgeDelay,  // used until enough latencies have been observed
+            int maxRetries,              // retries after 5xx responses
+            Duration baseBackoff,
+            Duration maxBackoff,
+            int failureThreshold,        // consecutive upstream failures (5xx after retries, timeouts,
+                                         // transport errors) that open the circuit; 4xx never count
+            Duration openDuration        // how long the circuit stays open before a trial call
+    ) {
+        public static ResiliencePolicy defaults() {
+            return new ResiliencePolicy(
+                    0.95, Duration.ofMillis(500), 3, Duration.ofMillis(50), Duration.ofSeconds(2), 5, Duration.ofSeconds(10)
+            );
+        }
+    }
+
+    // Closed: calls pass. Open: calls fail fast. Half-open: one trial call decides whether to close again.
+    static class CircuitBreaker {
+        enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final int failureThreshold;
+        private final long openNanos;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+
+        CircuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openDuration.toNanos();
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            state = State.CLOSED;
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+            }
+        }
+
+        synchronized State state() { return state; }
+    }
+
+    // Recent successful latencies in a fixed ring, for the hedge delay percentile
+    static class LatencyTracker {
+        private static final int MIN_SAMPLES = 20;
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyTracker(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        // -1 until enough samples have been recorded
+        synchronized long percentile(double p) {
+            if (size < MIN_SAMPLES)
+                return -1;
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) (p * size))];
+        }
+    }
+
+    // Adds latency-aware resilience on top of WeatherClient: a hedged duplicate request once a call
+    // exceeds the configured latency percentile, exponential backoff with full jitter for 5xx
+    // responses, and a circuit breaker that fails fast while the upstream is unhealthy.
+    static class ResilientWeatherClient {
+        private final WeatherClient delegate;
+        private final ResiliencePolicy policy;
+        private final CircuitBreaker breaker;
+        private final LatencyTracker latencies = new LatencyTracker(1024);
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        public ResilientWeatherClient(WeatherClient delegate, ResiliencePolicy policy) {
+            this.delegate = delegate;
+            this.policy = policy;
+            this.breaker = new CircuitBreaker(policy.failureThreshold(), policy.openDuration());
+        }
+
+        public WeatherData getWeather(String location, double latitude, double longitude) throws Exception {
+            try {
+                return getWeatherAsync(location, latitude, longitude).get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
         }
 
         public CompletableFuture<WeatherData> getWeatherAsync(String location, double latitude, double longitude) {
-            String url = String.format(
-                    "%s?latitude=%.4f&longitude=%.4f&current_weather=true",
-                    API_BASE_URL,
-                    latitude,
-                    longitude
+            CompletableFuture<WeatherData> result = new CompletableFuture<>();
+            attempt(location, latitude, longitude, 0, result);
+            return result;
+        }
+
+        public long hedges() { return hedges.sum(); }
+
+        public long retries() { return retries.sum(); }
+
+        public CircuitBreaker.State circuitState() { return breaker.state(); }
+
+        // The breaker admits and judges a logical call once; its retries neither re-acquire nor
+        // count as separate failures
+        private void attempt(String location, double latitude, double longitude, int attempt,
+                             CompletableFuture<WeatherData> result) {
+            if (attempt == 0 && !breaker.tryAcquire()) {
+                result.completeExceptionally(new CircuitOpenException());
+                return;
+            }
+            hedged(location, latitude, longitude).whenComplete((data, error) -> {
+                if (error == null) {
+                    breaker.onSuccess();
+                    result.complete(data);
+                    return;
+                }
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                boolean serverError = cause instanceof WeatherApiException api && api.isServerError();
+                if (serverError && attempt < policy.maxRetries()) {
+                    retries.increment();
+                    CompletableFuture.delayedExecutor(backoffNanos(attempt), TimeUnit.NANOSECONDS)
+                            .execute(() -> attempt(location, latitude, longitude, attempt + 1, result));
+                    return;
+                }
+                // Only 5xx, timeouts and transport errors say the upstream is unhealthy. A 4xx
+                // (bad location, bad request) is the caller's problem and proves the upstream answered.
+                if (serverError || cause instanceof IOException) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+                result.completeExceptionally(cause);
+            });
+        }
+
+        // Primary request plus, if it is still running after the hedge delay, one duplicate.
+        // The first success wins; the call fails only when every request sent has failed.
+        // Only the winner's latency, measured from the start of the call, feeds the hedge delay;
+        // a slow request that lost the race would otherwise drag the percentile into the tail.
+        private CompletableFuture<WeatherData> hedged(String location, double latitude, double longitude) {
+            CompletableFuture<WeatherData> result = new CompletableFuture<>();
+            AtomicInteger running = new AtomicInteger(1);
+            long start = System.nanoTime();
+            Runnable send = () -> {
+                delegate.getWeatherAsync(location, latitude, longitude).whenComplete((data, error) -> {
+                    if (error == null) {
+                        if (result.complete(data)) {
+                            latencies.record(System.nanoTime() - start);
+                        }
+                    } else if (running.decrementAndGet() == 0) {
+                        result.completeExceptionally(error);
+                    }
+                });
+            };
+            send.run();
+            CompletableFuture.delayedExecutor(hedgeDelayNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+                // Only hedge while the primary is still in flight
+                if (!result.isDone() && running.getAndUpdate(n -> n == 0 ? 0 : n + 1) > 0) {
+                    hedges.increment();
+                    send.run();
+                }
+            });
+            return result;
+        }
+
+        private long hedgeDelayNanos() {
+            long observed = latencies.percentile(policy.hedgePercentile());
+            return observed < 0 ? policy.initialHedgeDelay().toNanos() : observed;
+        }
+
+        // Full jitter: uniform in [0, min(maxBackoff, baseBackoff * 2^attempt)]
+        private long backoffNanos(int attempt) {
+            long ceiling = Math.min(policy.maxBackoff().toNanos(), policy.baseBackoff().toNanos() << Math.min(attempt, 30));
+            return ThreadLocalRandom.current().nextLong(ceiling + 1);
+        }
+    }
+
+    // Response cache keyed by coordinates rounded to the 4 decimals sent to the API.
+    // Fresh entries (younger than ttl) are served directly; stale ones (up to ttl + staleWhileRevalidate)
+    // are served while a single background refresh runs. Concurrent misses share one in-flight request.
+    static class CachingWeatherClient {
+        private record LocationKey(long latitude, long longitude) {
+            static LocationKey of(double latitude, double longitude) {
+                return new LocationKey(Math.round(latitude * 10_000), Math.round(longitude * 10_000));
+            }
+        }
+
+        private static class Entry {
+            final CompletableFuture<WeatherData> future;
+            volatile long loadedAtNanos;
+            volatile CompletableFuture<WeatherData> refresh;
+
+            Entry(CompletableFuture<WeatherData> future) {
+                this.future = future;
+            }
+        }
+
+        private final WeatherClient delegate;
+        private final long ttlNanos;
+        private final long staleNanos;
+        private final Map<LocationKey, Entry> entries;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder staleHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+
+        public CachingWeatherClient(WeatherClient delegate, int maxEntries, Duration ttl, Duration staleWhileRevalidate) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("maxEntries must be positive");
+            }
+            this.delegate = delegate;
+            this.ttlNanos = ttl.toNanos();
+            this.staleNanos = staleWhileRevalidate.toNanos();
+            // Access-ordered, so the least recently used location is evicted first
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LocationKey, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        public WeatherData getWeather(String location, double latitude, double longitude) throws Exception {
+            try {
+                return getWeatherAsync(location, latitude, longitude).get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        public CompletableFuture<WeatherData> getWeatherAsync(String location, double latitude, double longitude) {
+            LocationKey key = LocationKey.of(latitude, longitude);
+            long now = System.nanoTime();
+            Entry entry;
+            boolean load = false;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null || isExpired(entry, now)) {
+                    entry = new Entry(new CompletableFuture<>());
+                    entries.put(key, entry);
+                    load = true;
+                }
+            }
+
+            if (load) {
+                misses.increment();
+                fetch(key, entry, entry.future, location, latitude, longitude);
+            } else if (!entry.future.isDone()) {
+                coalesced.increment();
+            } else if (now - entry.loadedAtNanos < ttlNanos) {
+                hits.increment();
+            } else {
+                staleHits.increment();
+                refreshInBackground(key, entry, location, latitude, longitude);
+            }
+            return entry.future.thenApply(data -> new WeatherData(location, data.jsonData()));
+        }
+
+        public long hits() { return hits.sum(); }
+
+        public long staleHits() { return staleHits.sum(); }
+
+        public long misses() { return misses.sum(); }
+
+        // Misses that joined a request already in flight instead of calling the API
+        public long coalesced() { return coalesced.sum(); }
+
+        // Share of calls answered without a new upstream request
+        public double hitRate() {
+            long served = hits() + staleHits() + coalesced();
+            long total = served + misses();
+            return total == 0 ? 0 : (double) served / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=%d stale=%d coalesced=%d misses=%d hitRate=%.1f%%".formatted(
+                    hits(), staleHits(), coalesced(), misses(), hitRate() * 100
             );
+        }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Accept", "application/json")
-                    .timeout(Duration.ofSeconds(30))
-                    .GET()
-                    .build();
+        private boolean isExpired(Entry entry, long now) {
+            if (entry.future.isCompletedExceptionally())
+                return true;
+            return entry.future.isDone() && now - entry.loadedAtNanos >= ttlNanos + staleNanos;
+        }
 
-            return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                    .thenApply(response -> {
-                        if (response.statusCode() != 200) {
-                            throw new RuntimeException(
-                                    "API error: " + response.statusCode()
-                            );
+        private void refreshInBackground(LocationKey key, Entry stale, String location, double latitude, double longitude) {
+            CompletableFuture<WeatherData> refresh;
+            synchronized (stale) {
+                if (stale.refresh != null)
+                    return;
+                refresh = new CompletableFuture<>();
+                stale.refresh = refresh;
+            }
+            refresh.whenComplete((data, error) -> {
+                if (error == null) {
+                    Entry fresh = new Entry(CompletableFuture.completedFuture(data));
+                    fresh.loadedAtNanos = System.nanoTime();
+                    synchronized (entries) {
+                        entries.replace(key, stale, fresh);
+                    }
+                }
+                stale.refresh = null;
+            });
+            fetch(key, null, refresh, location, latitude, longitude);
+        }
+
+        // Completes target from the API; a failed initial load is dropped so the next call retries
+        private void fetch(LocationKey key, Entry entry, CompletableFuture<WeatherData> target,
+                           String location, double latitude, double longitude) {
+            delegate.getWeatherAsync(location, latitude, longitude).whenComplete((data, error) -> {
+                if (error != null) {
+                    if (entry != null) {
+                        synchronized (entries) {
+                            entries.remove(key, entry);
                         }
-                        return new WeatherData(location, response.body());
-                    });
+                    }
+                    target.completeExceptionally(error);
+                } else {
+                    if (entry != null)
+                        entry.loadedAtNanos = System.nanoTime();
+                    target.complete(data);
+                }
+            });
+        }
+    }
+
+    // Local stand-in for the weather API that counts requests and answers after a delay
+    static class StubWeatherServer implements AutoCloseable {
+        private final HttpServer server;
+        private final AtomicInteger requests = new AtomicInteger();
+
+        StubWeatherServer(Duration delay) throws IOException {
+            this(() -> delay);
+        }
+
+        StubWeatherServer(Supplier<Duration> delays) throws IOException {
+            this(delays, () -> 200);
+        }
+
+        // Each response is delayed by the next value of delays and answered with the next status
+        StubWeatherServer(Supplier<Duration> delays, IntSupplier statuses) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/v1/forecast", exchange -> {
+                requests.incrementAndGet();
+                try {
+                    Thread.sleep(delays.get().toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                int status = statuses.getAsInt();
+                if (status != 200) {
+                    exchange.sendResponseHeaders(status, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = """
+                        {"current_weather":{"time":"2024-12-06T12:00","temperature":12.3,"windspeed":8.5,"winddirection":240,"is_day":1,"weathercode":3}}"""
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            server.start();
+        }
+
+        String baseUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/forecast";
+        }
+
+        int requests() { return requests.get(); }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+
+    static void cacheDemo() throws Exception {
+        try (StubWeatherServer stub = new StubWeatherServer(Duration.ofMillis(100))) {
+            CachingWeatherClient cache = new CachingWeatherClient(
+                    new WeatherClient(stub.baseUrl()), 1_000, Duration.ofMillis(300), Duration.ofSeconds(5)
+            );
+
+            // 50 concurrent misses for the same coordinates share one request
+            List<CompletableFuture<WeatherData>> burst = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                burst.add(cache.getWeatherAsync("London", 51.50741, -0.12779));
+            }
+            CompletableFuture.allOf(burst.toArray(CompletableFuture[]::new)).join();
+            cache.getWeather("London", 51.5074, -0.1278);
+
+            // After the TTL the stale value is served while one refresh runs
+            Thread.sleep(400);
+            cache.getWeather("London", 51.5074, -0.1278);
+            cache.getWeather("London", 51.5074, -0.1278);
+            Thread.sleep(200);
+            cache.getWeather("London", 51.5074, -0.1278);
+
+            System.out.println("Cache: " + cache);
+            System.out.println("Upstream requests: " + stub.requests());
+        }
+    }
+
+    // Throughput and tail latency of a bulk fetch against a stub with 1% slow responses
+    static void batchDemo(int numberOfLocations) throws Exception {
+        Supplier<Duration> delays = () -> Duration.ofMillis(
+                ThreadLocalRandom.current().nextInt(100) == 0 ? 500 : 20
+        );
+        try (StubWeatherServer stub = new StubWeatherServer(delays)) {
+            WeatherClient client = new WeatherClient(stub.baseUrl());
+            List<Location> locations = new ArrayList<>();
+            for (int i = 0; i < numberOfLocations; i++) {
+                locations.add(new Location("Location " + i, -60 + i % 120, -180 + i % 360));
+            }
+
+            LongAdder failures = new LongAdder();
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            long start = System.nanoTime();
+            client.getWeatherBatch(locations, 100, new TokenBucket(5_000, 100), result -> {
+                latencies.add(result.latencyNanos());
+                if (!result.isSuccess())
+                    failures.increment();
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            List<Long> sorted = latencies.stream().sorted().toList();
+            System.out.printf(
+                    "Batch: %d locations in %.2f s (%.0f req/s), p50=%.1f ms p99=%.1f ms, failures=%d%n",
+                    sorted.size(), seconds, sorted.size() / seconds,
+                    sorted.get(sorted.size() / 2) / 1e6, sorted.get((int) (sorted.size() * 0.99)) / 1e6,
+                    failures.sum()
+            );
+        }
+    }
+
+    // Hedging against a slow tail, retries against flaky 5xx responses, fail-fast against an outage
+    static void resilienceDemo() throws Exception {
+        Supplier<Duration> slowTail = () -> Duration.ofMillis(
+                ThreadLocalRandom.current().nextInt(20) == 0 ? 1_000 : 10
+        );
+        try (StubWeatherServer stub = new StubWeatherServer(slowTail)) {
+            WeatherClient plain = new WeatherClient(stub.baseUrl());
+            ResilientWeatherClient resilient = new ResilientWeatherClient(plain, ResiliencePolicy.defaults());
+            System.out.printf("Slow tail p99: plain %.0f ms, hedged %.0f ms (%d hedges)%n",
+                    p99Millis(() -> plain.getWeatherAsync("London", 51.5074, -0.1278).join()),
+                    p99Millis(() -> resilient.getWeatherAsync("London", 51.5074, -0.1278).join()),
+                    resilient.hedges());
+        }
+
+        IntSupplier flaky = () -> ThreadLocalRandom.current().nextInt(10) < 3 ? 503 : 200;
+        try (StubWeatherServer stub = new StubWeatherServer(() -> Duration.ZERO, flaky)) {
+            ResilientWeatherClient resilient = new ResilientWeatherClient(
+                    new WeatherClient(stub.baseUrl()), ResiliencePolicy.defaults()
+            );
+            int failures = 0;
+            int rejected = 0;
+            for (int i = 0; i < 100; i++) {
+                try {
+                    resilient.getWeather("London", 51.5074, -0.1278);
+                } catch (WeatherApiException e) {
+                    failures++;
+                } catch (CircuitOpenException e) {
+                    rejected++;
+                }
+            }
+            System.out.printf("Flaky upstream (30%% 503): %d failures, %d failed fast, after %d retries%n",
+                    failures, rejected, resilient.retries());
+        }
+
+        try (StubWeatherServer stub = new StubWeatherServer(() -> Duration.ZERO, () -> 503)) {
+            ResilientWeatherClient resilient = new ResilientWeatherClient(
+                    new WeatherClient(stub.baseUrl()), ResiliencePolicy.defaults()
+            );
+            int rejected = 0;
+            for (int i = 0; i < 20; i++) {
+                try {
+                    resilient.getWeather("London", 51.5074, -0.1278);
+                } catch (CircuitOpenException e) {
+                    rejected++;
+                } catch (WeatherApiException e) {
+                    // counted by the stub
+                }
+            }
+            System.out.printf("Outage: circuit %s, %d calls failed fast, %d reached upstream%n",
+                    resilient.circuitState(), rejected, stub.requests());
+        }
+
+        try (StubWeatherServer stub = new StubWeatherServer(() -> Duration.ZERO, () -> 404)) {
+            ResilientWeatherClient resilient = new ResilientWeatherClient(
+                    new WeatherClient(stub.baseUrl()), ResiliencePolicy.defaults()
+            );
+            for (int i = 0; i < 20; i++) {
+                try {
+                    resilient.getWeather("Atlantis", 91, 0);
+                } catch (WeatherApiException e) {
+                    // a client error, not an upstream failure
+                }
+            }
+            System.out.printf("Bad requests: circuit %s after %d 404s, %d retries%n",
+                    resilient.circuitState(), stub.requests(), resilient.retries());
+        }
+    }
+
+    private static double p99Millis(Runnable call) {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long start = System.nanoTime();
+            call.run();
+            latencies.add(System.nanoTime() - start);
+        }
+        latencies.sort(null);
+        return latencies.get((int) (latencies.size() * 0.99)) / 1e6;
+    }
+
+    // Typed decoding over HTTP, then allocation of streaming decoding vs. buffering the body as a String
+    static void decodingDemo() throws Exception {
+        try (StubWeatherServer stub = new StubWeatherServer(Duration.ZERO)) {
+            WeatherClient client = new WeatherClient(stub.baseUrl());
+            System.out.println("Decoded: " + client.getCurrentWeather("London", 51.5074, -0.1278, true));
+        }
+
+        // A forecast-sized body with hourly data ahead of current_weather, delivered in 8 KB chunks
+        StringBuilder json = new StringBuilder("{\"latitude\":51.5,\"hourly\":{\"temperature_2m\":[");
+        for (int i = 0; i < 20_000; i++) {
+            json.append(i > 0 ? "," : "").append(10 + i % 10 * 0.1);
+        }
+        json.append("]},\"current_weather\":{\"time\":\"2024-12-06T12:00\",\"temperature\":12.3,")
+                .append("\"windspeed\":8.5,\"winddirection\":240,\"is_day\":1,\"weathercode\":3}}");
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        String asString = null;
+        for (int i = 0; i < 100; i++) {
+            HttpResponse.BodySubscriber<String> subscriber = HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+            asString = decode(subscriber, body);
+        }
+        long stringBytes = (threads.getThreadAllocatedBytes(threadId) - before) / 100;
+        before = threads.getThreadAllocatedBytes(threadId);
+        WeatherReport report = null;
+        for (int i = 0; i < 100; i++) {
+            CurrentWeatherDecoder decoder = new CurrentWeatherDecoder(false);
+            report = decode(HttpResponse.BodySubscribers.fromSubscriber(decoder, CurrentWeatherDecoder::finish), body)
+                    .toReport("London");
+        }
+        long streamingBytes = (threads.getThreadAllocatedBytes(threadId) - before) / 100;
+        System.out.printf("Allocated per %d KB response: ofString %,d bytes, streaming decoder %,d bytes%n",
+                body.length / 1024, stringBytes, streamingBytes);
+        System.out.println("Decoded " + report.current() + " (string body length " + asString.length() + ")");
+    }
+
+    private static <T> T decode(HttpResponse.BodySubscriber<T> subscriber, byte[] body) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {}
+
+            @Override
+            public void cancel() {}
+        });
+        for (int offset = 0; offset < body.length; offset += 8192) {
+            int length = Math.min(8192, body.length - offset);
+            subscriber.onNext(List.of(ByteBuffer.wrap(body, offset, length).asReadOnlyBuffer()));
+        }
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+
+    // Metrics snapshot and JFR events for a mix of fast, slow and failing requests
+    static void instrumentationDemo() throws Exception {
+        Supplier<Duration> delays = () -> Duration.ofMillis(ThreadLocalRandom.current().nextInt(10) == 0 ? 100 : 5);
+        IntSupplier statuses = () -> ThreadLocalRandom.current().nextInt(10) == 0 ? 503 : 200;
+        Path jfrFile = Files.createTempFile("weather", ".jfr");
+        try (StubWeatherServer stub = new StubWeatherServer(delays, statuses);
+             Recording recording = new Recording()) {
+            recording.enable(WeatherRequestEvent.class);
+            recording.start();
+
+            WeatherClientMetrics metrics = new WeatherClientMetrics();
+            WeatherClient client = new WeatherClient(stub.baseUrl(), metrics);
+            for (int i = 0; i < 100; i++) {
+                try {
+                    client.getWeather("London", 51.5074, -0.1278);
+                } catch (WeatherApiException e) {
+                    // counted by status code
+                }
+            }
+
+            recording.stop();
+            recording.dump(jfrFile);
+            metrics.snapshot().forEach((endpoint, snapshot) -> {
+                System.out.println("Endpoint " + endpoint + ": in flight " + snapshot.inFlight()
+                        + ", statuses " + snapshot.responsesByStatus() + ", transport errors " + snapshot.transportErrors());
+                System.out.println("  time to first byte: " + snapshot.timeToFirstByte());
+                System.out.println("  total:              " + snapshot.total());
+            });
+            long events = RecordingFile.readAllEvents(jfrFile).stream()
+                    .filter(event -> event.getEventType().getName().equals("weather.HttpRequest"))
+                    .count();
+            System.out.println("JFR weather.HttpRequest events: " + events);
+        } finally {
+            Files.deleteIfExists(jfrFile);
         }
     }
 
     public static void main(String[] args) throws Exception {
+        cacheDemo();
+        batchDemo(2_000);
+        resilienceDemo();
+        decodingDemo();
+        instrumentationDemo();
+
         WeatherClient client = new WeatherClient();
 
         // Synchronous call - London coordinates
@@ -1,14 +1,650 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 public class FileProcessorExercise {
 
+    // Read-only view of a key=value config file. The bytes are read once and indexed by key;
+    // values are decoded only when asked for. Blank lines and lines starting with # are skipped,
+    // whitespace around keys and values is ignored, and the last occurrence of a key wins.
+    static class ConfigView {
+        private final byte[] data;
+        private final Map<String, Integer> index = new LinkedHashMap<>();
+        private int[] valueOffsets = new int[16];
+        private int[] valueLengths = new int[16];
+        private String content;
+
+        ConfigView(byte[] data) {
+            this.data = data;
+            int position = 0;
+            while (position < data.length) {
+                int lineEnd = position;
+                while (lineEnd < data.length && data[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                indexLine(position, lineEnd);
+                position = lineEnd + 1;
+            }
+        }
+
+        public Set<String> keys() { return Collections.unmodifiableSet(index.keySet()); }
+
+        public boolean contains(String key) { return index.containsKey(key); }
+
+        public Optional<String> getString(String key) {
+            Integer entry = index.get(key);
+            if (entry == null)
+                return Optional.empty();
+            return Optional.of(new String(data, valueOffsets[entry], valueLengths[entry], StandardCharsets.UTF_8));
+        }
+
+        // Parsed straight from the bytes; throws NumberFormatException for non-integer values
+        public int getInt(String key, int defaultValue) {
+            Integer entry = index.get(key);
+            if (entry == null)
+                return defaultValue;
+            int offset = valueOffsets[entry];
+            int end = offset + valueLengths[entry];
+            boolean negative = offset < end && data[offset] == '-';
+            int i = negative ? offset + 1 : offset;
+            if (i == end) {
+                throw new NumberFormatException("Not an integer: " + key);
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = data[i] - '0';
+                if (digit < 0 || digit > 9 || (value = value * 10 + digit) > Integer.MAX_VALUE + 1L) {
+                    throw new NumberFormatException("Not an integer: " + key);
+                }
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Not an integer: " + key);
+            }
+            return (int) value;
+        }
+
+        // "true" (any case) is true, anything else present is false
+        public boolean getBoolean(String key, boolean defaultValue) {
+            Integer entry = index.get(key);
+            if (entry == null)
+                return defaultValue;
+            return valueLengths[entry] == 4
+                    && (data[valueOffsets[entry]] | 0x20) == 't'
+                    && (data[valueOffsets[entry] + 1] | 0x20) == 'r'
+                    && (data[valueOffsets[entry] + 2] | 0x20) == 'u'
+                    && (data[valueOffsets[entry] + 3] | 0x20) == 'e';
+        }
+
+        // Whole file as text, decoded on first use
+        public String content() {
+            if (content == null) {
+                content = new String(data, StandardCharsets.UTF_8);
+            }
+            return content;
+        }
+
+        private void indexLine(int start, int end) {
+            start = skipWhitespace(start, end);
+            end = trimTrailing(start, end);
+            if (start == end || data[start] == '#')
+                return;
+            int separator = start;
+            while (separator < end && data[separator] != '=') {
+                separator++;
+            }
+            if (separator == end)
+                return;
+            int keyEnd = trimTrailing(start, separator);
+            int valueStart = skipWhitespace(separator + 1, end);
+            String key = new String(data, start, keyEnd - start, StandardCharsets.UTF_8);
+            int entry = index.computeIfAbsent(key, k -> index.size());
+            if (entry == valueOffsets.length) {
+                valueOffsets = Arrays.copyOf(valueOffsets, entry * 2);
+                valueLengths = Arrays.copyOf(valueLengths, entry * 2);
+            }
+            valueOffsets[entry] = valueStart;
+            valueLengths[entry] = end - valueStart;
+        }
+
+        private int skipWhitespace(int position, int end) {
+            while (position < end && isWhitespace(data[position])) {
+                position++;
+            }
+            return position;
+        }
+
+        private int trimTrailing(int start, int end) {
+            while (end > start && isWhitespace(data[end - 1])) {
+                end--;
+            }
+            return end;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+    }
+
+    // Live, in-memory configs for one directory. A background thread watches the directory and
+    // re-parses only files that changed, once their events have been quiet for the debounce period
+    // (editors often write a file several times in a row). Every reload publishes a new immutable
+    // snapshot through a single volatile field, so readers never block or touch the disk.
+    static class ConfigRegistry implements AutoCloseable {
+        private final Path directory;
+        private final PathMatcher matcher;
+        private final long debounceNanos;
+        private final WatchService watchService;
+        private final Thread watcher;
+        private final Map<Path, Long> pending = new HashMap<>(); // only touched by the watcher thread
+        private volatile Map<String, ConfigView> snapshot;
+        private volatile long version;
+
+        ConfigRegistry(Path directory, String glob, Duration debounce) throws IOException {
+            this.directory = directory;
+            this.matcher = directory.getFileSystem().getPathMatcher("glob:" + glob);
+            this.debounceNanos = debounce.toNanos();
+            this.watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+            Map<String, ConfigView> initial = new HashMap<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(this::isWatched).toList()) {
+                    initial.put(file.getFileName().toString(), new ConfigView(Files.readAllBytes(file)));
+                }
+            }
+            this.snapshot = Map.copyOf(initial);
+
+            this.watcher = new Thread(this::watch, "config-watcher-" + directory.getFileName());
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+
+        // Current config of a file, or null if it does not exist
+        public ConfigView get(String filename) { return snapshot.get(filename); }
+
+        public Map<String, ConfigView> snapshot() { return snapshot; }
+
+        // Number of snapshots published since start
+        public long version() { return version; }
+
+        @Override
+        public void close() throws IOException {
+            watcher.interrupt();
+            watchService.close();
+        }
+
+        private boolean isWatched(Path file) {
+            return Files.isRegularFile(file) && matcher.matches(file.getFileName());
+        }
+
+        private void watch() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long waitNanos = pending.isEmpty() ? Long.MAX_VALUE : debounceNanos / 2;
+                    WatchKey key = watchService.poll(Math.min(waitNanos, 1_000_000_000L), TimeUnit.NANOSECONDS);
+                    if (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == OVERFLOW) {
+                                // Events were lost; re-check every file
+                                try (Stream<Path> files = Files.list(directory)) {
+                                    files.forEach(file -> pending.put(file, System.nanoTime()));
+                                }
+                                snapshot.keySet().forEach(name -> pending.put(directory.resolve(name), System.nanoTime()));
+                            } else if (event.context() instanceof Path name && matcher.matches(name)) {
+                                pending.put(directory.resolve(name), System.nanoTime());
+                            }
+                        }
+                        key.reset();
+                    }
+                    reloadSettledFiles();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // closed
+            } catch (IOException e) {
+                System.err.println("Config watcher stopped: " + e.getMessage());
+            }
+        }
+
+        private void reloadSettledFiles() {
+            long now = System.nanoTime();
+            Map<String, ConfigView> next = null;
+            var iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                var entry = iterator.next();
+                if (now - entry.getValue() < debounceNanos)
+                    continue;
+                iterator.remove();
+                if (next == null)
+                    next = new HashMap<>(snapshot);
+                Path file = entry.getKey();
+                String name = file.getFileName().toString();
+                try {
+                    if (isWatched(file)) {
+                        next.put(name, new ConfigView(Files.readAllBytes(file)));
+                    } else {
+                        next.remove(name);
+                    }
+                } catch (IOException e) {
+                    // Keep the last good version; a later event retries
+                    System.err.println("Failed to reload " + name + ": " + e.getMessage());
+                }
+            }
+            if (next != null) {
+                snapshot = Map.copyOf(next);
+                version++;
+            }
+        }
+    }
+
+    record RetentionPolicy(int maxVersions, Duration maxAge) {
+        public RetentionPolicy {
+            if (maxVersions <= 0) {
+                throw new IllegalArgumentException("maxVersions must be positive");
+            }
+        }
+    }
+
+    // SHA-256 fingerprints of files by path, reused while a file's modification time and size are
+    // unchanged. Shared by the backup store and the tree comparator; callers that rewrite a file
+    // within the timestamp granularity must invalidate it.
+    static class FingerprintCache {
+        private record Fingerprint(FileTime lastModified, long size, String hash) {}
+
+        private final Map<Path, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+        // Null unless the file was fingerprinted with exactly these attributes
+        public String get(Path file, BasicFileAttributes attributes) {
+            Fingerprint cached = fingerprints.get(file);
+            return cached != null && cached.lastModified().equals(attributes.lastModifiedTime())
+                    && cached.size() == attributes.size() ? cached.hash() : null;
+        }
+
+        public void put(Path file, BasicFileAttributes attributes, String hash) {
+            fingerprints.put(file, new Fingerprint(attributes.lastModifiedTime(), attributes.size(), hash));
+        }
+
+        public void invalidate(Path file) {
+            fingerprints.remove(file);
+        }
+
+        static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        static String hex(MessageDigest digest) {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    // Content-addressed backups. Each distinct content is stored once as blobs/<sha256>; a backup
+    // version is a hard link named <timestamp>.<sha256> in versions/<filename>/ (a copy where links
+    // are unsupported). Backing up unchanged content returns the latest version without any I/O
+    // beyond a stat; otherwise the source is copied once and the blob is named by the digest of the
+    // bytes actually copied, so a file rewritten mid-backup can never be stored under a stale hash.
+    static class BackupStore {
+        private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+
+        private final Path blobs;
+        private final Path versions;
+        private final RetentionPolicy retention;
+        private final FingerprintCache sourceHashes = new FingerprintCache();
+        private final Map<String, Path> latestVersions = new HashMap<>();
+
+        BackupStore(Path root, RetentionPolicy retention) throws IOException {
+            this.blobs = Files.createDirectories(root.resolve("blobs"));
+            this.versions = Files.createDirectories(root.resolve("versions"));
+            this.retention = retention;
+        }
+
+        public synchronized Path backup(Path source) throws IOException {
+            String filename = source.getFileName().toString();
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            Path latest = latestVersions.get(filename);
+            if (latest != null && hashOf(latest).equals(sourceHashes.get(source, attributes))) {
+                return latest;
+            }
+            Path fileVersions = Files.createDirectories(versions.resolve(filename));
+            List<Path> existing = listVersions(fileVersions);
+
+            Path temp = newBlobTemp();
+            Path version;
+            try {
+                String hash = copyAndHash(source, temp);
+                sourceHashes.put(source, attributes, hash);
+                if (!existing.isEmpty() && hashOf(existing.get(existing.size() - 1)).equals(hash)) {
+                    latestVersions.put(filename, existing.get(existing.size() - 1));
+                    return existing.get(existing.size() - 1);
+                }
+                Path blob = blobs.resolve(hash);
+                if (Files.notExists(blob)) {
+                    Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                }
+                version = newVersionPath(fileVersions, hash);
+                try {
+                    Files.createLink(version, blob);
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(blob, version);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            existing.add(version);
+            prune(existing);
+            latestVersions.put(filename, version);
+            return version;
+        }
+
+        // Forgets the cached hash of a source that was just rewritten: a rewrite within the
+        // timestamp granularity may keep mtime and size, which would otherwise pass as unchanged
+        public void invalidate(Path source) {
+            sourceHashes.invalidate(source);
+        }
+
+        public List<Path> versionsOf(String filename) throws IOException {
+            Path fileVersions = versions.resolve(filename);
+            return Files.isDirectory(fileVersions) ? listVersions(fileVersions) : List.of();
+        }
+
+        // Copies only the content: blobs are shared by every source with the same bytes, so their
+        // permissions say nothing about the target, which keeps its own (or gets the defaults)
+        public void restore(Path version, Path target) throws IOException {
+            try (FileChannel in = FileChannel.open(version, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                long size = in.size();
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+        }
+
+        // Drops versions beyond the policy (always keeping the newest) and blobs no version uses
+        private void prune(List<Path> fileVersions) throws IOException {
+            LocalDateTime cutoff = LocalDateTime.now().minus(retention.maxAge());
+            for (int i = 0; i < fileVersions.size() - 1; i++) {
+                Path version = fileVersions.get(i);
+                boolean tooMany = fileVersions.size() - i > retention.maxVersions();
+                boolean tooOld = timestampOf(version).isBefore(cutoff);
+                if (tooMany || tooOld) {
+                    Files.deleteIfExists(version);
+                }
+            }
+            collectUnusedBlobs();
+        }
+
+        private void collectUnusedBlobs() throws IOException {
+            Set<String> used = new HashSet<>();
+            try (Stream<Path> files = Files.walk(versions, 2)) {
+                files.filter(Files::isRegularFile).forEach(version -> used.add(hashOf(version)));
+            }
+            try (Stream<Path> files = Files.list(blobs)) {
+                for (Path blob : files.toList()) {
+                    String name = blob.getFileName().toString();
+                    if (!name.endsWith(".tmp") && !used.contains(name)) {
+                        Files.deleteIfExists(blob);
+                    }
+                }
+            }
+        }
+
+        // Oldest first; names start with a sortable timestamp
+        private static List<Path> listVersions(Path fileVersions) throws IOException {
+            try (Stream<Path> files = Files.list(fileVersions)) {
+                return files.sorted().collect(Collectors.toCollection(ArrayList::new));
+            }
+        }
+
+        private static Path newVersionPath(Path fileVersions, String hash) {
+            String timestamp = LocalDateTime.now().format(VERSION_FORMAT);
+            Path version = fileVersions.resolve(timestamp + "." + hash);
+            for (int i = 1; Files.exists(version); i++) {
+                version = fileVersions.resolve(timestamp + "_" + i + "." + hash);
+            }
+            return version;
+        }
+
+        private static String hashOf(Path version) {
+            String name = version.getFileName().toString();
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+
+        private static LocalDateTime timestampOf(Path version) {
+            return LocalDateTime.parse(version.getFileName().toString().substring(0, 19), VERSION_FORMAT);
+        }
+
+        // Created with default permissions rather than createTempFile's owner-only ones, since
+        // versions are links to the blob; the .tmp suffix keeps collectUnusedBlobs away from it
+        private Path newBlobTemp() throws IOException {
+            while (true) {
+                String suffix = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+                try {
+                    return Files.createFile(blobs.resolve("incoming-" + suffix + ".tmp"));
+                } catch (FileAlreadyExistsException e) {
+                    // pick another name
+                }
+            }
+        }
+
+        // Copies source to target and returns the SHA-256 of the bytes written
+        private static String copyAndHash(Path source, Path target) throws IOException {
+            MessageDigest digest = FingerprintCache.sha256();
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+                while (in.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.rewind();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+            return FingerprintCache.hex(digest);
+        }
+    }
+
+    enum ChangeType { ADDED, REMOVED, MODIFIED }
+
+    // A null value means the key is absent on that side
+    record KeyChange(String key, String oldValue, String newValue) {}
+
+    // keyChanges is only filled for modified files matched as key=value configs
+    record FileChange(Path path, ChangeType type, List<KeyChange> keyChanges) {}
+
+    record TreeDiff(List<FileChange> changes, int filesCompared, long elapsedNanos) {
+        public boolean identical() { return changes.isEmpty(); }
+    }
+
+    // Compares two directory trees file by file. Both trees are listed concurrently and the
+    // common files are compared in parallel: different sizes short-circuit, small files are
+    // compared with Files.mismatch, large files by SHA-256 over memory-mapped chunks. Fingerprints
+    // are cached by path, mtime and size, so one baseline compared against many snapshots is
+    // hashed once. Modified key=value files additionally get a key-level diff.
+    static class ConfigTreeComparator {
+        private static final long LARGE_FILE_BYTES = 1 << 20;
+        private static final long CHUNK_BYTES = 64L << 20;
+
+        private final PathMatcher keyValueFiles;
+        private final FingerprintCache fingerprints = new FingerprintCache();
+
+        ConfigTreeComparator(String keyValueGlob) {
+            this.keyValueFiles = FileSystems.getDefault().getPathMatcher("glob:" + keyValueGlob);
+        }
+
+        public TreeDiff compare(Path left, Path right) throws IOException {
+            long start = System.nanoTime();
+            CompletableFuture<Map<Path, Long>> leftFiles = CompletableFuture.supplyAsync(() -> listFiles(left));
+            Map<Path, Long> rightFiles = listFiles(right);
+            Map<Path, Long> leftSizes;
+            try {
+                leftSizes = leftFiles.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException io)
+                    throw io.getCause();
+                throw e;
+            }
+
+            List<FileChange> changes = new ArrayList<>();
+            List<Path> common = new ArrayList<>();
+            leftSizes.keySet().forEach(path -> {
+                if (rightFiles.containsKey(path))
+                    common.add(path);
+                else
+                    changes.add(new FileChange(path, ChangeType.REMOVED, List.of()));
+            });
+            rightFiles.keySet().stream()
+                    .filter(path -> !leftSizes.containsKey(path))
+                    .forEach(path -> changes.add(new FileChange(path, ChangeType.ADDED, List.of())));
+
+            try {
+                common.parallelStream()
+                        .map(path -> compareFile(path, left.resolve(path), right.resolve(path),
+                                leftSizes.get(path), rightFiles.get(path)))
+                        .filter(Objects::nonNull)
+                        .forEachOrdered(changes::add);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            changes.sort(Comparator.comparing(FileChange::path));
+            return new TreeDiff(changes, common.size(), System.nanoTime() - start);
+        }
+
+        // Null when the files are identical
+        private FileChange compareFile(Path relative, Path left, Path right, long leftSize, long rightSize) {
+            try {
+                boolean same = leftSize == rightSize && (leftSize < LARGE_FILE_BYTES
+                        ? Files.mismatch(left, right) == -1
+                        : fingerprint(left).equals(fingerprint(right)));
+                if (same)
+                    return null;
+                List<KeyChange> keyChanges = keyValueFiles.matches(relative.getFileName())
+                        ? diffKeys(new ConfigView(Files.readAllBytes(left)), new ConfigView(Files.readAllBytes(right)))
+                        : List.of();
+                return new FileChange(relative, ChangeType.MODIFIED, keyChanges);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static List<KeyChange> diffKeys(ConfigView before, ConfigView after) {
+            List<KeyChange> changes = new ArrayList<>();
+            for (String key : before.keys()) {
+                String oldValue = before.getString(key).orElseThrow();
+                String newValue = after.getString(key).orElse(null);
+                if (!oldValue.equals(newValue)) {
+                    changes.add(new KeyChange(key, oldValue, newValue));
+                }
+            }
+            for (String key : after.keys()) {
+                if (!before.contains(key)) {
+                    changes.add(new KeyChange(key, null, after.getString(key).orElseThrow()));
+                }
+            }
+            return changes;
+        }
+
+        private String fingerprint(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            String cached = fingerprints.get(file, attributes);
+            if (cached != null) {
+                return cached;
+            }
+            MessageDigest digest = FingerprintCache.sha256();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                for (long position = 0; position < size; position += CHUNK_BYTES) {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_BYTES, size - position)));
+                }
+            }
+            String hash = FingerprintCache.hex(digest);
+            fingerprints.put(file, attributes, hash);
+            return hash;
+        }
+
+        // Relative path -> size of every regular file below root
+        private static Map<Path, Long> listFiles(Path root) {
+            Map<Path, Long> files = new HashMap<>();
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (attributes.isRegularFile()) {
+                            files.put(root.relativize(file), attributes.size());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return files;
+        }
+    }
+
     static class ConfigFileProcessor {
+        // A parsed file together with the attributes it was read with
+        private record CachedConfig(FileTime lastModified, long size, ConfigView view) {}
+
         private final Path configDir;
+        private final Map<Path, CachedConfig> cache = new ConcurrentHashMap<>();
+        // Shared so fingerprints of large files carry over from one comparison to the next
+        private final ConfigTreeComparator treeComparator = new ConfigTreeComparator("*.config");
+        private volatile BackupStore backups;
 
         public ConfigFileProcessor(String directory) {
             this.configDir = Path.of(directory);
@@ -21,11 +657,143 @@ public class FileProcessorExercise {
         }
 
         public String readConfig(String filename) throws IOException {
-            return Files.readString(configDir.resolve(filename));
+            return readConfigView(filename).content();
+        }
+
+        // Served from cache while the file's modification time and size are unchanged
+        public ConfigView readConfigView(String filename) throws IOException {
+            Path file = configDir.resolve(filename);
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            CachedConfig cached = cache.get(file);
+            if (cached != null
+                    && cached.lastModified().equals(attributes.lastModifiedTime())
+                    && cached.size() == attributes.size()) {
+                return cached.view();
+            }
+            ConfigView view = new ConfigView(Files.readAllBytes(file));
+            cache.put(file, new CachedConfig(attributes.lastModifiedTime(), attributes.size(), view));
+            return view;
+        }
+
+        // Starts a live registry of the files in configDir matching glob (e.g. "*.config")
+        public ConfigRegistry watch(String glob, Duration debounce) throws IOException {
+            return new ConfigRegistry(configDir, glob, debounce);
         }
 
+        // Crash-safe: readers and a crash see either the old or the new content, never a torn file
         public void writeConfig(String filename, String content) throws IOException {
-            Files.writeString(configDir.resolve(filename), content);
+            Path file = configDir.resolve(filename);
+            Path temp = writeTemp(file, content, true);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            syncDirectory(configDir);
+            // A rewrite within the timestamp granularity may keep mtime and size, so drop it explicitly
+            invalidate(file);
+        }
+
+        public WriteBatch newWriteBatch() {
+            return new WriteBatch();
+        }
+
+        // Stages many configs and publishes them with one directory sync. Staged files are only
+        // forced to disk on commit, so restaged or discarded content is never synced; commit still
+        // costs one data fsync per file, the saving is the per-file directory sync. Each file is
+        // replaced atomically, but the batch as a whole is not: a crash during commit may leave
+        // some files new and some old. Closing a batch that was not committed discards what was staged.
+        class WriteBatch implements AutoCloseable {
+            private final Map<Path, Path> staged = new LinkedHashMap<>(); // target -> temp
+
+            public WriteBatch stage(String filename, String content) throws IOException {
+                Path file = configDir.resolve(filename);
+                Path previous = staged.put(file, writeTemp(file, content, false));
+                if (previous != null)
+                    Files.deleteIfExists(previous);
+                return this;
+            }
+
+            public void commit() throws IOException {
+                // Contents must be durable before any rename makes them visible
+                for (Path temp : staged.values()) {
+                    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                }
+                for (var entry : staged.entrySet()) {
+                    Files.move(entry.getValue(), entry.getKey(), StandardCopyOption.ATOMIC_MOVE);
+                    invalidate(entry.getKey());
+                }
+                staged.clear();
+                syncDirectory(configDir);
+            }
+
+            @Override
+            public void close() throws IOException {
+                for (Path temp : staged.values()) {
+                    Files.deleteIfExists(temp);
+                }
+                staged.clear();
+            }
+        }
+
+        // Writes content to a hidden temp file next to target, optionally forcing it to disk. The temp
+        // file gets default permissions (createTempFile would make it owner-only), and the target's
+        // permissions when it already exists, so the rename does not change them.
+        private static Path writeTemp(Path target, String content, boolean force) throws IOException {
+            Path temp;
+            while (true) {
+                String suffix = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+                temp = target.resolveSibling("." + target.getFileName() + "." + suffix + ".tmp");
+                try {
+                    Files.createFile(temp);
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    // pick another name
+                }
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                if (Files.exists(target)) {
+                    copyPermissions(target, temp);
+                }
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (force)
+                    channel.force(true);
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            return temp;
+        }
+
+        private static void copyPermissions(Path from, Path to) throws IOException {
+            try {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system; the temp file keeps its default permissions
+            }
+        }
+
+        // Makes renames in the directory durable; not supported on every platform (e.g. Windows)
+        private static void syncDirectory(Path directory) throws IOException {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException | UnsupportedOperationException e) {
+                if (Files.notExists(directory))
+                    throw e instanceof IOException io ? io : new IOException(e);
+            }
+        }
+
+        // Drops everything cached under the file's old mtime and size
+        private void invalidate(Path file) {
+            cache.remove(file);
+            BackupStore store = backups;
+            if (store != null)
+                store.invalidate(file);
         }
 
         public boolean areConfigsIdentical(String file1, String file2) throws IOException {
@@ -35,13 +803,119 @@ public class FileProcessorExercise {
             ) == -1;
         }
 
-        public void backupConfig(String filename) throws IOException {
-            Path source = configDir.resolve(filename);
-            String timestamp = LocalDateTime.now()
-                    .format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            Path backup = configDir.resolve(filename + "." + timestamp + ".bak");
+        public TreeDiff compareTrees(Path left, Path right) throws IOException {
+            return treeComparator.compare(left, right);
+        }
+
+        // Stores a deduplicated version under configDir/.backups and returns it
+        public Path backupConfig(String filename) throws IOException {
+            return backupStore().backup(configDir.resolve(filename));
+        }
+
+        public synchronized BackupStore backupStore() throws IOException {
+            if (backups == null) {
+                backups = new BackupStore(configDir.resolve(".backups"), new RetentionPolicy(30, Duration.ofDays(90)));
+            }
+            return backups;
+        }
+    }
+
+    // 10k repeated backups of an unchanged file: timestamped full copies vs. the backup store
+    static void backupBenchmark(int backups) throws IOException {
+        Path dir = Files.createTempDirectory("backup-bench");
+        try {
+            Path source = Files.writeString(dir.resolve("app.config"), "server.port=8080\n".repeat(1_000));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < backups; i++) {
+                Files.copy(source, dir.resolve("app.config." + i + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            double copyMillis = (System.nanoTime() - start) / 1e6;
+
+            BackupStore store = new BackupStore(dir.resolve(".backups"), new RetentionPolicy(30, Duration.ofDays(90)));
+            start = System.nanoTime();
+            for (int i = 0; i < backups; i++) {
+                store.backup(source);
+            }
+            double storeMillis = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("%n%,d backups: full copies %.0f ms (%,d bytes written), backup store %.0f ms (%d version)%n",
+                    backups, copyMillis, backups * Files.size(source), storeMillis, store.versionsOf("app.config").size());
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // Two generated host snapshots that differ in a handful of files. main runs it at 20k files
+    // rather than the 100k-file fleet size it was sized for, to keep the demo's disk use small.
+    static void treeComparisonBenchmark(int numberOfFiles) throws IOException {
+        Path dir = Files.createTempDirectory("tree-bench");
+        try {
+            Path left = dir.resolve("host-a");
+            Path right = dir.resolve("host-b");
+            for (int i = 0; i < numberOfFiles; i++) {
+                String name = "service-" + (i / 100) + "/app-" + i + ".config";
+                String content = "server.port=" + (8000 + i % 1000) + "\ndb.url=db-" + (i % 10) + "\n";
+                Files.createDirectories(left.resolve(name).getParent());
+                Files.createDirectories(right.resolve(name).getParent());
+                Files.writeString(left.resolve(name), content);
+                Files.writeString(right.resolve(name), i % 5_000 == 1 ? content.replace("db-", "replica-") : content);
+            }
+            Files.writeString(right.resolve("service-0/extra.config"), "feature.enabled=true\n");
+
+            TreeDiff diff = new ConfigTreeComparator("*.config").compare(left, right);
+            System.out.printf("%nCompared %,d files in %.0f ms, %d changes (the 100,000-file target was not run here):%n",
+                    diff.filesCompared(), diff.elapsedNanos() / 1e6, diff.changes().size());
+            diff.changes().stream().limit(3).forEach(change -> System.out.println("  " + change));
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // Plain in-place writes vs. atomic single writes vs. one batch, for the same set of files
+    static void writeBenchmark(int numberOfFiles) throws IOException {
+        Path dir = Files.createTempDirectory("write-bench");
+        try {
+            ConfigFileProcessor processor = new ConfigFileProcessor(dir.toString());
+            String content = "server.port=8080\ndb.url=localhost\ndb.name=myapp\n";
+
+            long start = System.nanoTime();
+            for (int i = 0; i < numberOfFiles; i++) {
+                Files.writeString(dir.resolve("plain-" + i + ".config"), content);
+            }
+            double plainMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int i = 0; i < numberOfFiles; i++) {
+                processor.writeConfig("atomic-" + i + ".config", content);
+            }
+            double atomicMillis = (System.nanoTime() - start) / 1e6;
 
-            Files.copy(source, backup, StandardCopyOption.REPLACE_EXISTING);
+            start = System.nanoTime();
+            try (ConfigFileProcessor.WriteBatch batch = processor.newWriteBatch()) {
+                for (int i = 0; i < numberOfFiles; i++) {
+                    batch.stage("batch-" + i + ".config", content);
+                }
+                batch.commit();
+            }
+            double batchMillis = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("%n%,d config writes: in place %.0f ms (not durable), atomic %.0f ms, batched %.0f ms%n",
+                    numberOfFiles, plainMillis, atomicMillis, batchMillis);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
         }
     }
 
@@ -64,6 +938,12 @@ public class FileProcessorExercise {
             System.out.println("Config content:");
             System.out.println(processor.readConfig("app.config"));
 
+            // Typed access through the indexed view
+            ConfigView config = processor.readConfigView("app.config");
+            System.out.println("\nserver.port as int: " + config.getInt("server.port", 80));
+            System.out.println("db.name: " + config.getString("db.name").orElse("<none>"));
+            System.out.println("Cached view reused: " + (config == processor.readConfigView("app.config")));
+
             // Compare configs
             boolean identical = processor.areConfigsIdentical(
                     "app.config",
@@ -72,11 +952,32 @@ public class FileProcessorExercise {
             System.out.println("\nConfigs identical: " + identical);
 
             // Create backup
-            processor.backupConfig("app.config");
-            System.out.println("\nBackup created successfully");
+            Path backup = processor.backupConfig("app.config");
+            System.out.println("\nBackup created successfully: " + backup.getFileName());
 
         } catch (IOException e) {
             System.err.println("File operation failed: " + e.getMessage());
         }
+
+        // Hot reload: a burst of writes is picked up as a single new snapshot
+        try (ConfigRegistry registry = processor.watch("*.config", Duration.ofMillis(200))) {
+            System.out.println("\nLive server.port: " + registry.get("app.config").getInt("server.port", 80));
+            for (int port = 9090; port <= 9094; port++) {
+                processor.writeConfig("app.config", "server.port=" + port + "\ndb.url=localhost\ndb.name=myapp");
+            }
+            Thread.sleep(1_000);
+            System.out.println("Live server.port after edits: " + registry.get("app.config").getInt("server.port", 80)
+                    + " (snapshots published: " + registry.version() + ")");
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Config watch failed: " + e.getMessage());
+        }
+
+        try {
+            backupBenchmark(10_000);
+            treeComparisonBenchmark(20_000);
+            writeBenchmark(1_000);
+        } catch (IOException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        }
     }
 }
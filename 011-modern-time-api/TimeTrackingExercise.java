@@ -1,9 +1,26 @@
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class TimeTrackingExercise {
 
@@ -11,21 +28,615 @@ public class TimeTrackingExercise {
 
         @Override
         public String toString() {
-            return "%s: %s for %s".formatted(
-                    start.truncatedTo(ChronoUnit.MINUTES),
-                    activity,
-                    formatDuration(duration)
+            return appendTo(new StringBuilder(64)).toString();
+        }
+
+        // Appends the toString form, for rendering many entries into one buffer
+        public StringBuilder appendTo(StringBuilder sb) {
+            sb.append(start.truncatedTo(ChronoUnit.MINUTES)).append(": ").append(activity).append(" for ");
+            return DurationFormat.appendEntry(sb, duration);
+        }
+    }
+
+    // Duration rendering shared by TimeEntry and ActivityTracker. Digits are appended straight
+    // into a StringBuilder, and minute values below an hour come from a precomputed table.
+    static final class DurationFormat {
+        private static final String[] MINUTES = new String[60];
+
+        static {
+            for (int i = 0; i < MINUTES.length; i++) {
+                MINUTES[i] = i + "m";
+            }
+        }
+
+        private DurationFormat() {}
+
+        // ActivityTracker style: "1h 5m", "2h", "45m", "0m", "-1h 30m"
+        static String compact(Duration duration) {
+            if (duration.isZero())
+                return MINUTES[0];
+            return appendCompact(new StringBuilder(12), duration).toString();
+        }
+
+        static StringBuilder appendCompact(StringBuilder sb, Duration duration) {
+            long seconds = duration.getSeconds();
+            if (duration.isNegative()) {
+                sb.append('-');
+                // Whole seconds of the absolute value (the fraction rounds the magnitude down)
+                seconds = duration.getNano() > 0 ? -(seconds + 1) : Math.negateExact(seconds);
+            }
+            long hours = seconds / 3600;
+            int minutes = (int) (seconds / 60 % 60);
+            if (hours > 0) {
+                sb.append(hours).append('h');
+                if (minutes > 0) {
+                    sb.append(' ').append(MINUTES[minutes]);
+                }
+                return sb;
+            }
+            return sb.append(MINUTES[minutes]);
+        }
+
+        // TimeEntry style: "1h 0m", "45m"; durations below an hour, even negative ones, in minutes
+        static String entry(Duration duration) {
+            return appendEntry(new StringBuilder(12), duration).toString();
+        }
+
+        static StringBuilder appendEntry(StringBuilder sb, Duration duration) {
+            long hours = duration.toHours();
+            if (hours > 0) {
+                return sb.append(hours).append("h ").append(MINUTES[duration.toMinutesPart()]);
+            }
+            long minutes = duration.toMinutes();
+            return minutes >= 0 && minutes < MINUTES.length
+                    ? sb.append(MINUTES[(int) minutes])
+                    : sb.append(minutes).append('m');
+        }
+    }
+
+    record TimeSlot(LocalDateTime start, LocalDateTime end) {
+        public Duration duration() { return Duration.between(start, end); }
+    }
+
+    // Interval tree over time entries: a treap ordered by start, each node also keeping the latest
+    // end in its subtree. Adding is O(log n) expected with no re-sorting; overlap and free-slot
+    // queries over [from, to) visit O(min(n, k log n)) nodes for k matching entries, since the
+    // max-end pruning only cuts whole subtrees that end before from.
+    static class TimeEntryIndex {
+        private static class Node {
+            final TimeEntry entry;
+            final long start;
+            final long end;
+            final long sequence;
+            final int priority;
+            long maxEnd;
+            Node left;
+            Node right;
+
+            Node(TimeEntry entry, long sequence, int priority) {
+                this.entry = entry;
+                this.start = epochNanos(entry.start());
+                this.end = start + entry.duration().toNanos();
+                this.sequence = sequence;
+                this.priority = priority;
+                this.maxEnd = end;
+            }
+        }
+
+        private final Random random = new Random();
+        private Node root;
+        private int size;
+
+        public static TimeEntryIndex of(Collection<TimeEntry> entries) {
+            TimeEntryIndex index = new TimeEntryIndex();
+            entries.forEach(index::add);
+            return index;
+        }
+
+        public void add(TimeEntry entry) {
+            root = insert(root, new Node(entry, size, random.nextInt()));
+            size++;
+        }
+
+        public int size() { return size; }
+
+        // Entries ordered by start (ties in insertion order)
+        public List<TimeEntry> entries() {
+            List<TimeEntry> result = new ArrayList<>(size);
+            inOrder(root, result);
+            return result;
+        }
+
+        // Entries that share at least one instant with [from, to), ordered by start
+        public List<TimeEntry> overlapping(LocalDateTime from, LocalDateTime to) {
+            List<TimeEntry> result = new ArrayList<>();
+            collect(root, epochNanos(from), epochNanos(to), result);
+            return result;
+        }
+
+        // Uncovered periods between the first start and the last end, across all entries. Unlike
+        // ActivityTracker.findGaps, an entry nested inside a longer one does not open a gap.
+        public List<Duration> uncoveredGaps() {
+            List<Duration> gaps = new ArrayList<>();
+            long coveredUntil = Long.MIN_VALUE;
+            for (TimeEntry entry : entries()) {
+                long start = epochNanos(entry.start());
+                if (coveredUntil != Long.MIN_VALUE && start > coveredUntil) {
+                    gaps.add(Duration.ofNanos(start - coveredUntil));
+                }
+                coveredUntil = Math.max(coveredUntil, start + entry.duration().toNanos());
+            }
+            return gaps;
+        }
+
+        // Periods inside [from, to) not covered by any entry and at least minLength long
+        public List<TimeSlot> freeSlots(LocalDateTime from, LocalDateTime to, Duration minLength) {
+            List<TimeSlot> slots = new ArrayList<>();
+            long end = epochNanos(to);
+            long minNanos = minLength.toNanos();
+            long freeFrom = epochNanos(from);
+            for (TimeEntry entry : overlapping(from, to)) {
+                long start = epochNanos(entry.start());
+                if (start > freeFrom && start - freeFrom >= minNanos) {
+                    slots.add(new TimeSlot(toDateTime(freeFrom), toDateTime(start)));
+                }
+                freeFrom = Math.max(freeFrom, start + entry.duration().toNanos());
+            }
+            if (end > freeFrom && end - freeFrom >= minNanos) {
+                slots.add(new TimeSlot(toDateTime(freeFrom), toDateTime(end)));
+            }
+            return slots;
+        }
+
+        private static Node insert(Node node, Node added) {
+            if (node == null)
+                return added;
+            if (compare(added, node) < 0) {
+                node.left = insert(node.left, added);
+                if (node.left.priority > node.priority)
+                    node = rotateRight(node);
+            } else {
+                node.right = insert(node.right, added);
+                if (node.right.priority > node.priority)
+                    node = rotateLeft(node);
+            }
+            update(node);
+            return node;
+        }
+
+        // Subtrees ending before from are skipped, and so is everything right of a node starting at or after to
+        private static void collect(Node node, long from, long to, List<TimeEntry> result) {
+            if (node == null || node.maxEnd < from)
+                return;
+            collect(node.left, from, to, result);
+            if (node.start >= to)
+                return;
+            // The second test keeps zero-length entries that start inside the range
+            if (node.end > from || node.start >= from) {
+                result.add(node.entry);
+            }
+            collect(node.right, from, to, result);
+        }
+
+        private static void inOrder(Node node, List<TimeEntry> result) {
+            if (node == null)
+                return;
+            inOrder(node.left, result);
+            result.add(node.entry);
+            inOrder(node.right, result);
+        }
+
+        private static int compare(Node a, Node b) {
+            int byStart = Long.compare(a.start, b.start);
+            return byStart != 0 ? byStart : Long.compare(a.sequence, b.sequence);
+        }
+
+        private static Node rotateRight(Node node) {
+            Node pivot = node.left;
+            node.left = pivot.right;
+            pivot.right = node;
+            update(node);
+            update(pivot);
+            return pivot;
+        }
+
+        private static Node rotateLeft(Node node) {
+            Node pivot = node.right;
+            node.right = pivot.left;
+            pivot.left = node;
+            update(node);
+            update(pivot);
+            return pivot;
+        }
+
+        private static void update(Node node) {
+            long maxEnd = node.end;
+            if (node.left != null)
+                maxEnd = Math.max(maxEnd, node.left.maxEnd);
+            if (node.right != null)
+                maxEnd = Math.max(maxEnd, node.right.maxEnd);
+            node.maxEnd = maxEnd;
+        }
+
+        // LocalDateTime has no zone; UTC keeps ordering and differences intact.
+        // Nanosecond longs cover the years 1677 to 2262.
+        private static long epochNanos(LocalDateTime dateTime) {
+            return Math.addExact(Math.multiplyExact(dateTime.toEpochSecond(ZoneOffset.UTC), 1_000_000_000L), dateTime.getNano());
+        }
+
+        private static LocalDateTime toDateTime(long epochNanos) {
+            return LocalDateTime.ofEpochSecond(
+                    Math.floorDiv(epochNanos, 1_000_000_000L), (int) Math.floorMod(epochNanos, 1_000_000_000L), ZoneOffset.UTC
             );
         }
+    }
+
+    // Compact time entry store: start as epoch seconds, duration in seconds and activity as a
+    // dictionary code, each in its own primitive array. Sub-second precision is dropped.
+    // Totals, gaps and rounding are plain loops over the arrays; Duration is only created for results.
+    static class TimeEntryTable {
+        private final Map<String, Integer> activityCodes = new HashMap<>();
+        private final List<String> activities = new ArrayList<>();
+        private long[] starts;
+        private int[] durations;
+        private int[] codes;
+        private int size;
+        private boolean sorted = true;
+
+        public TimeEntryTable() {
+            this(16);
+        }
+
+        private TimeEntryTable(int initialCapacity) {
+            starts = new long[initialCapacity];
+            durations = new int[initialCapacity];
+            codes = new int[initialCapacity];
+        }
+
+        public static TimeEntryTable from(Collection<TimeEntry> entries) {
+            TimeEntryTable table = new TimeEntryTable(Math.max(16, entries.size()));
+            entries.forEach(table::add);
+            return table;
+        }
+
+        public void add(TimeEntry entry) {
+            Integer code = activityCodes.get(entry.activity());
+            if (code == null) {
+                code = activities.size();
+                activityCodes.put(entry.activity(), code);
+                activities.add(entry.activity());
+            }
+            add(entry.start().toEpochSecond(ZoneOffset.UTC), Math.toIntExact(entry.duration().getSeconds()), code);
+        }
+
+        private void add(long start, int duration, int code) {
+            if (size == starts.length) {
+                int capacity = size * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+                codes = Arrays.copyOf(codes, capacity);
+            }
+            if (size > 0 && start < starts[size - 1])
+                sorted = false;
+            starts[size] = start;
+            durations[size] = duration;
+            codes[size] = code;
+            size++;
+        }
+
+        public int size() { return size; }
+
+        public TimeEntry get(int row) {
+            Objects.checkIndex(row, size);
+            return new TimeEntry(
+                    activities.get(codes[row]),
+                    LocalDateTime.ofEpochSecond(starts[row], 0, ZoneOffset.UTC),
+                    Duration.ofSeconds(durations[row])
+            );
+        }
+
+        public List<TimeEntry> toEntries() {
+            List<TimeEntry> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(get(i));
+            }
+            return entries;
+        }
+
+        public Duration total() {
+            long seconds = 0;
+            for (int i = 0; i < size; i++) {
+                seconds += durations[i];
+            }
+            return Duration.ofSeconds(seconds);
+        }
+
+        // Same semantics as ActivityTracker.findGaps: positive gaps between entries adjacent by start.
+        // Rows keep their insertion order; only a permutation of row numbers is sorted.
+        public List<Duration> gaps() {
+            int[] order = rowsByStart();
+            List<Duration> gaps = new ArrayList<>();
+            for (int i = 0; i < size - 1; i++) {
+                int row = order == null ? i : order[i];
+                int next = order == null ? i + 1 : order[i + 1];
+                long gap = starts[next] - (starts[row] + durations[row]);
+                if (gap > 0) {
+                    gaps.add(Duration.ofSeconds(gap));
+                }
+            }
+            return gaps;
+        }
+
+        // Copy with every duration rounded like ActivityTracker.roundToQuarterHour
+        public TimeEntryTable roundedToQuarterHour() {
+            TimeEntryTable rounded = new TimeEntryTable(Math.max(16, size));
+            rounded.activityCodes.putAll(activityCodes);
+            rounded.activities.addAll(activities);
+            for (int i = 0; i < size; i++) {
+                long minutes = durations[i] / 60;
+                rounded.add(starts[i], (int) (Math.round(minutes / 15.0) * 15 * 60), codes[i]);
+            }
+            return rounded;
+        }
 
-        private String formatDuration(Duration duration) {
-            if (duration.toHours() > 0) {
-                return "%dh %dm".formatted(
-                        duration.toHours(),
-                        duration.toMinutesPart()
-                );
+        // Row numbers ordered by start, or null when rows were appended in time order (the usual
+        // case). The sort is stable, like the stream sort in ActivityTracker.findGaps, so entries
+        // with the same start keep their insertion order and the gaps come out the same.
+        private int[] rowsByStart() {
+            if (sorted)
+                return null;
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
             }
-            return "%dm".formatted(duration.toMinutes());
+            mergeSort(order, new int[size], 0, size);
+            return order;
+        }
+
+        // Sorts rows[from, to) by start; on ties the left run wins, which keeps the sort stable
+        private void mergeSort(int[] rows, int[] scratch, int from, int to) {
+            if (to - from <= 16) {
+                for (int i = from + 1; i < to; i++) {
+                    int row = rows[i];
+                    int j = i;
+                    for (; j > from && starts[rows[j - 1]] > starts[row]; j--) {
+                        rows[j] = rows[j - 1];
+                    }
+                    rows[j] = row;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(rows, scratch, from, middle);
+            mergeSort(rows, scratch, middle, to);
+            if (starts[rows[middle - 1]] <= starts[rows[middle]])
+                return;
+            System.arraycopy(rows, from, scratch, from, to - from);
+            for (int k = from, left = from, right = middle; k < to; k++) {
+                if (right >= to || (left < middle && starts[scratch[left]] <= starts[scratch[right]])) {
+                    rows[k] = scratch[left++];
+                } else {
+                    rows[k] = scratch[right++];
+                }
+            }
+        }
+    }
+
+    // Per-activity, per-day and per-week totals from one parallel pass over a TimeEntryTable.
+    // Start times are wall-clock times in the report zone and durations are elapsed time, so an
+    // entry crossing midnight or a DST change is split at the real local day boundaries (days may
+    // be 23 or 25 hours long). Partitions accumulate into primitive arrays and are merged pairwise
+    // by fork/join; Duration and LocalDate objects are only created when results are read.
+    static class TimeReportEngine {
+        private static final int SEQUENTIAL_THRESHOLD = 32_768;
+
+        private final ZoneId zone;
+
+        TimeReportEngine(ZoneId zone) {
+            this.zone = zone;
+        }
+
+        public TimeReport run(Collection<TimeEntry> entries) {
+            return run(TimeEntryTable.from(entries));
+        }
+
+        public TimeReport run(TimeEntryTable table) {
+            Partial partial = table.size() == 0
+                    ? new Partial(0)
+                    : ForkJoinPool.commonPool().invoke(new ReportTask(zone, table, 0, table.size()));
+            return new TimeReport(List.copyOf(table.activities), partial.activitySeconds, partial.firstDay, partial.daySeconds);
+        }
+
+        // Static, with everything it needs in its own fields; tasks are never actually serialized
+        private static class ReportTask extends RecursiveTask<Partial> {
+            private static final long serialVersionUID = 1L;
+
+            private final ZoneId zone;
+            private final transient TimeEntryTable table;
+            private final int from;
+            private final int to;
+
+            ReportTask(ZoneId zone, TimeEntryTable table, int from, int to) {
+                this.zone = zone;
+                this.table = table;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Partial compute() {
+                if (to - from <= SEQUENTIAL_THRESHOLD) {
+                    Partial partial = new Partial(table.activities.size());
+                    DayBoundaries days = new DayBoundaries(zone);
+                    for (int i = from; i < to; i++) {
+                        partial.add(table.starts[i], table.durations[i], table.codes[i], days);
+                    }
+                    return partial;
+                }
+                int middle = (from + to) >>> 1;
+                ReportTask left = new ReportTask(zone, table, from, middle);
+                left.fork();
+                Partial right = new ReportTask(zone, table, middle, to).compute();
+                return left.join().merge(right);
+            }
+        }
+
+        // Instant boundaries of one local day, cached because consecutive entries share days
+        private static class DayBoundaries {
+            final ZoneId zone;
+            final ZoneRules rules;
+            long day = Long.MIN_VALUE;
+            long start;
+            long nextStart;
+            int offset;
+            boolean hasTransition;
+
+            DayBoundaries(ZoneId zone) {
+                this.zone = zone;
+                this.rules = zone.getRules();
+            }
+
+            void moveTo(long epochDay) {
+                if (epochDay == day)
+                    return;
+                start = epochDay == day + 1 ? nextStart : dayStart(epochDay);
+                nextStart = dayStart(epochDay + 1);
+                ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochSecond(start));
+                hasTransition = transition != null && transition.toEpochSecond() < nextStart;
+                offset = rules.getOffset(Instant.ofEpochSecond(start)).getTotalSeconds();
+                day = epochDay;
+            }
+
+            // Instant of a wall-clock time on this day, resolved like ZonedDateTime.of
+            long toInstant(long localEpochSecond) {
+                if (!hasTransition)
+                    return localEpochSecond - offset;
+                return LocalDateTime.ofEpochSecond(localEpochSecond, 0, ZoneOffset.UTC).atZone(zone).toEpochSecond();
+            }
+
+            private long dayStart(long epochDay) {
+                return LocalDate.ofEpochDay(epochDay).atStartOfDay(zone).toEpochSecond();
+            }
+        }
+
+        private static class Partial {
+            long[] activitySeconds;
+            long firstDay;
+            long[] daySeconds = new long[0];
+
+            Partial(int activities) {
+                activitySeconds = new long[activities];
+            }
+
+            void add(long localStart, int durationSeconds, int code, DayBoundaries days) {
+                activitySeconds[code] += durationSeconds;
+                long day = Math.floorDiv(localStart, 86_400);
+                days.moveTo(day);
+                long start = days.toInstant(localStart);
+                long end = start + durationSeconds;
+                while (true) {
+                    long portion = Math.min(end, days.nextStart) - start;
+                    addToDay(day, portion);
+                    start += portion;
+                    if (start >= end)
+                        break;
+                    days.moveTo(++day);
+                }
+            }
+
+            void addToDay(long day, long seconds) {
+                if (daySeconds.length == 0) {
+                    firstDay = day;
+                    daySeconds = new long[8];
+                }
+                if (day < firstDay) {
+                    long[] grown = new long[(int) (firstDay - day) + daySeconds.length];
+                    System.arraycopy(daySeconds, 0, grown, (int) (firstDay - day), daySeconds.length);
+                    daySeconds = grown;
+                    firstDay = day;
+                } else if (day - firstDay >= daySeconds.length) {
+                    daySeconds = Arrays.copyOf(daySeconds, Math.max(daySeconds.length * 2, (int) (day - firstDay) + 1));
+                }
+                daySeconds[(int) (day - firstDay)] += seconds;
+            }
+
+            Partial merge(Partial other) {
+                for (int code = 0; code < other.activitySeconds.length; code++) {
+                    activitySeconds[code] += other.activitySeconds[code];
+                }
+                for (int i = 0; i < other.daySeconds.length; i++) {
+                    if (other.daySeconds[i] != 0) {
+                        addToDay(other.firstDay + i, other.daySeconds[i]);
+                    }
+                }
+                return this;
+            }
+        }
+    }
+
+    // Result of TimeReportEngine; totals are kept as seconds until read
+    static class TimeReport {
+        private final List<String> activities;
+        private final long[] activitySeconds;
+        private final long firstDay;
+        private final long[] daySeconds;
+
+        TimeReport(List<String> activities, long[] activitySeconds, long firstDay, long[] daySeconds) {
+            this.activities = activities;
+            this.activitySeconds = activitySeconds;
+            this.firstDay = firstDay;
+            this.daySeconds = daySeconds;
+        }
+
+        public Duration total() {
+            long seconds = 0;
+            for (long s : activitySeconds) {
+                seconds += s;
+            }
+            return Duration.ofSeconds(seconds);
+        }
+
+        public Map<String, Duration> byActivity() {
+            Map<String, Duration> result = new LinkedHashMap<>();
+            for (int code = 0; code < activitySeconds.length; code++) {
+                if (activitySeconds[code] != 0) {
+                    result.put(activities.get(code), Duration.ofSeconds(activitySeconds[code]));
+                }
+            }
+            return result;
+        }
+
+        public SortedMap<LocalDate, Duration> byDay() {
+            SortedMap<LocalDate, Duration> result = new TreeMap<>();
+            for (int i = 0; i < daySeconds.length; i++) {
+                if (daySeconds[i] != 0) {
+                    result.put(LocalDate.ofEpochDay(firstDay + i), Duration.ofSeconds(daySeconds[i]));
+                }
+            }
+            return result;
+        }
+
+        // ISO weeks, keyed by their Monday
+        public SortedMap<LocalDate, Duration> byWeek() {
+            SortedMap<LocalDate, Long> seconds = new TreeMap<>();
+            long week = Long.MIN_VALUE;
+            long weekSeconds = 0;
+            for (int i = 0; i < daySeconds.length; i++) {
+                long day = firstDay + i;
+                long monday = day - Math.floorMod(day + 3, 7); // epoch day 0 was a Thursday
+                if (monday != week) {
+                    if (weekSeconds != 0)
+                        seconds.put(LocalDate.ofEpochDay(week), weekSeconds);
+                    week = monday;
+                    weekSeconds = 0;
+                }
+                weekSeconds += daySeconds[i];
+            }
+            if (weekSeconds != 0)
+                seconds.put(LocalDate.ofEpochDay(week), weekSeconds);
+            SortedMap<LocalDate, Duration> result = new TreeMap<>();
+            seconds.forEach((monday, total) -> result.put(monday, Duration.ofSeconds(total)));
+            return result;
         }
     }
 
@@ -37,19 +648,7 @@ public class TimeTrackingExercise {
         }
 
         public String formatDuration(Duration duration) {
-            if (duration.isZero())
-                return "0m";
-            if (duration.isNegative()) {
-                return "-" + formatDuration(duration.abs());
-            }
-
-            long hours = duration.toHours();
-            int minutes = duration.toMinutesPart();
-
-            if (hours > 0) {
-                return minutes > 0 ? "%dh %dm".formatted(hours, minutes) : "%dh".formatted(hours);
-            }
-            return "%dm".formatted(minutes);
+            return DurationFormat.compact(duration);
         }
 
         public Duration calculateTotal(List<TimeEntry> entries) {
@@ -82,6 +681,118 @@ public class TimeTrackingExercise {
 
             return gaps;
         }
+
+        // Periods no entry covers, from an index that is kept sorted as entries are added. Not the
+        // same as findGaps, which only looks at neighbours by start: an entry nested inside a longer
+        // one yields a gap there but none here.
+        public List<Duration> uncoveredGaps(TimeEntryIndex index) {
+            return index.uncoveredGaps();
+        }
+    }
+
+    // Entries appended out of order with many equal starts: the table must find the same gaps
+    // as ActivityTracker.findGaps, which depends on equal starts keeping their insertion order,
+    // and must still return its rows in insertion order afterwards
+    static boolean tiedStartsCheck(int numberOfEntries) {
+        Random random = new Random(3);
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 8, 0);
+        List<TimeEntry> entries = new ArrayList<>(numberOfEntries);
+        for (int i = 0; i < numberOfEntries; i++) {
+            entries.add(new TimeEntry("Task " + (i % 7), base.plusMinutes(15L * random.nextInt(numberOfEntries / 4)),
+                    Duration.ofMinutes(1 + random.nextInt(60))));
+        }
+        List<Duration> expected = new ActivityTracker().findGaps(entries);
+        TimeEntryTable table = TimeEntryTable.from(entries);
+        return table.gaps().equals(expected) && table.toEntries().equals(entries);
+    }
+
+    // Heap footprint and speed of a million entries as records vs. as primitive columns
+    static void storageBenchmark(int numberOfEntries) {
+        Random random = new Random(5);
+        String[] activities = {"Coding", "Meeting", "Documentation", "Review", "Support"};
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+
+        long before = usedHeap();
+        List<TimeEntry> entries = new ArrayList<>(numberOfEntries);
+        for (int i = 0; i < numberOfEntries; i++) {
+            start = start.plusMinutes(5 + random.nextInt(60));
+            entries.add(new TimeEntry(activities[random.nextInt(activities.length)], start,
+                    Duration.ofMinutes(1 + random.nextInt(55))));
+        }
+        long listBytes = usedHeap() - before;
+
+        before = usedHeap();
+        TimeEntryTable table = TimeEntryTable.from(entries);
+        long tableBytes = usedHeap() - before;
+
+        ActivityTracker tracker = new ActivityTracker();
+        long t0 = System.nanoTime();
+        Duration listTotal = tracker.calculateTotal(entries);
+        int listGaps = tracker.findGaps(entries).size();
+        long t1 = System.nanoTime();
+        Duration tableTotal = table.total();
+        int tableGaps = table.gaps().size();
+        long t2 = System.nanoTime();
+
+        System.out.printf("%n%,d entries: records ~%,d KB, table ~%,d KB%n", numberOfEntries, listBytes / 1024, tableBytes / 1024);
+        System.out.printf("Total + gaps: records %.1f ms, table %.1f ms (same result: %b)%n",
+                (t1 - t0) / 1e6, (t2 - t1) / 1e6, listTotal.equals(tableTotal) && listGaps == tableGaps);
+    }
+
+    // Renders a large timesheet into one buffer with the shared duration formatter
+    static void formattingBenchmark(int numberOfEntries) {
+        Random random = new Random(11);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        List<TimeEntry> entries = new ArrayList<>(numberOfEntries);
+        for (int i = 0; i < numberOfEntries; i++) {
+            start = start.plusMinutes(5 + random.nextInt(60));
+            entries.add(new TimeEntry("Coding", start, Duration.ofMinutes(1 + random.nextInt(240))));
+        }
+
+        ActivityTracker tracker = new ActivityTracker();
+        StringBuilder sb = new StringBuilder(numberOfEntries * 48);
+        long t0 = System.nanoTime();
+        for (TimeEntry entry : entries) {
+            entry.appendTo(sb).append(" (").append(tracker.formatDuration(entry.duration())).append(")\n");
+        }
+        long t1 = System.nanoTime();
+        System.out.printf("%nRendered %,d entries (%,d chars) in %.1f ms%n", numberOfEntries, sb.length(), (t1 - t0) / 1e6);
+    }
+
+    // Entries across midnight and the March 2024 DST change in Berlin, plus a year-long parallel run
+    static void reportDemo() {
+        List<TimeEntry> entries = List.of(
+                new TimeEntry("Support", LocalDateTime.of(2024, 3, 29, 22, 0), Duration.ofHours(4)),
+                new TimeEntry("Deploy", LocalDateTime.of(2024, 3, 31, 1, 0), Duration.ofHours(3)),
+                new TimeEntry("Coding", LocalDateTime.of(2024, 4, 1, 9, 0), Duration.ofHours(8))
+        );
+        TimeReportEngine engine = new TimeReportEngine(ZoneId.of("Europe/Berlin"));
+        TimeReport report = engine.run(entries);
+        System.out.println("\nBy activity: " + report.byActivity());
+        System.out.println("By day:      " + report.byDay());
+        System.out.println("By week:     " + report.byWeek());
+
+        Random random = new Random(9);
+        String[] activities = {"Coding", "Meeting", "Documentation", "Review", "Support"};
+        TimeEntryTable year = new TimeEntryTable();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        while (start.getYear() == 2024) {
+            year.add(new TimeEntry(activities[random.nextInt(activities.length)], start, Duration.ofMinutes(10 + random.nextInt(50))));
+            start = start.plusSeconds(30 + random.nextInt(60));
+        }
+        long t0 = System.nanoTime();
+        TimeReport yearReport = engine.run(year);
+        System.out.printf("Year report over %,d entries: %d days, %d weeks, totals match: %b, in %.1f ms%n",
+                year.size(), yearReport.byDay().size(), yearReport.byWeek().size(),
+                yearReport.total().equals(year.total()), (System.nanoTime() - t0) / 1e6);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
     }
 
     public static void main(String[] args) {
@@ -123,11 +834,27 @@ public class TimeTrackingExercise {
         List<Duration> gaps = tracker.findGaps(entries);
         gaps.forEach(gap -> System.out.println("Gap: " + tracker.formatDuration(gap)));
 
+        // Indexed queries
+        TimeEntryIndex index = TimeEntryIndex.of(entries);
+        LocalDateTime windowStart = entries.get(0).start();
+        LocalDateTime windowEnd = windowStart.plusHours(4);
+        System.out.println("\nEntries overlapping the first two hours:");
+        index.overlapping(windowStart, windowStart.plusHours(2)).forEach(System.out::println);
+        System.out.println("Uncovered gaps: " + tracker.uncoveredGaps(index).stream().map(tracker::formatDuration).toList());
+        System.out.println("Free slots of at least 20m in the next 4 hours:");
+        index.freeSlots(windowStart, windowEnd, Duration.ofMinutes(20))
+                .forEach(slot -> System.out.println("Free: " + tracker.formatDuration(slot.duration())));
+
         // Display total time
         Duration total = tracker.calculateTotal(entries);
         System.out.println(
                 "\nTotal time: " +
                         tracker.formatDuration(total)
         );
+
+        System.out.println("\nTied starts, table gaps match tracker: " + (tiedStartsCheck(40) && tiedStartsCheck(100_000)));
+        storageBenchmark(1_000_000);
+        formattingBenchmark(200_000);
+        reportDemo();
     }
 }